@@ -1,8 +1,9 @@
 package iCalendarEditor;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 
-public class Alarm implements Cloneable {
+public class Alarm implements Cloneable, ICSWriter.Writable {
 
 	private int timeAhead;
 	private String description;
@@ -64,11 +65,17 @@ public class Alarm implements Cloneable {
 	// DESCRIPTION:CPS2231W01COMPUTER ORGAN & PROGRAMMING@GEH-C504\n
 	// END:VALARM
 	public String exportICSFormat() {
-		StringBuilder temp = new StringBuilder("BEGIN:VALARM\nACTION:DISPLAY\n"); // First and second line
-		temp.append(String.format("TRIGGER;RELATED=START:-PT%dM\n", timeAhead)); // Third line
-		temp.append(String.format("DESCRIPTION:%s\n", description)); // Fourth line
-		temp.append("END:VALARM\n"); // Fifth line
-		return temp.toString();
+		return ICSWriter.toString(this);
+	}
+
+	// Purpose: Write the alarm in the ics format (the description is escaped)
+	@Override
+	public void writeICS(ICSWriter writer) throws IOException {
+		writer.line("BEGIN", "VALARM");
+		writer.line("ACTION", "DISPLAY");
+		writer.property("TRIGGER;RELATED=START").value("-PT").value(timeAhead).value('M').endLine();
+		writer.textLine("DESCRIPTION", description);
+		writer.line("END", "VALARM");
 	}
 
 	// Purpose: Directly write the alarm to the output file
@@ -0,0 +1,41 @@
+package iCalendarEditor;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+
+//Channel keeping the written bytes in memory as a list of buffers
+//Used by the parallel export: each task writes its contents into its own channel,
+//then the buffers are written to the file in order by ICSWriter.write(ByteBuffer[])
+class BufferListChannel implements WritableByteChannel {
+
+	private final ArrayList<ByteBuffer> buffers = new ArrayList<>();
+	private boolean open = true;
+
+	// Purpose: Copy the remaining bytes of the source into a new buffer of the list
+	@Override
+	public int write(ByteBuffer src) throws ClosedChannelException {
+		if (!open)
+			throw new ClosedChannelException();
+		byte[] bytes = new byte[src.remaining()];
+		src.get(bytes);
+		buffers.add(ByteBuffer.wrap(bytes));
+		return bytes.length;
+	}
+
+	// Purpose: Get the buffers in the written order (ready to be read)
+	public ByteBuffer[] getBuffers() {
+		return buffers.toArray(new ByteBuffer[0]);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+}
@@ -0,0 +1,112 @@
+package iCalendarEditor;
+
+import java.util.Arrays;
+
+//Busy time of a calendar as a bitset of 5-minute slots from a start time
+//(bit set = the slot is taken by an occurrence)
+//A term of 16 weeks is about 500 words, so the grids of many calendars are
+//combined by a few hundred word-wide OR operations
+//Built and cached by ICalendar.getBusyGrid(), used by FreeSlotFinder
+//A cached grid is never changed (the finder combines the grids into a new one)
+class BusyGrid {
+
+	// Length of a slot in milliseconds
+	public static final long SLOT = 1000 * 60 * 5;
+
+	// Start time of the first slot (epoch milliseconds)
+	private final long from;
+	// Number of the slots
+	private final int size;
+	private final long[] words;
+
+	public BusyGrid(long from, int size) {
+		this.from = from;
+		this.size = size;
+		this.words = new long[(size + 63) >>> 6];
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	// End time of the last slot (exclusive)
+	public long getTo() {
+		return from + size * SLOT;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Purpose: Mark the slots overlapping the time span [start, end) busy
+	// (a span without length takes no slot)
+	public void mark(long start, long end) {
+		if (end <= start || end <= from || start >= getTo())
+			return;
+		int first = (int) Math.max(Math.floorDiv(start - from, SLOT), 0);
+		int last = (int) Math.min(Math.floorDiv(end - from - 1, SLOT) + 1, size);
+		markSlots(first, last);
+	}
+
+	// Purpose: Mark the slots from index first (inclusive) to index last
+	// (exclusive) busy
+	public void markSlots(int first, int last) {
+		if (first >= last)
+			return;
+		int firstWord = first >>> 6;
+		int lastWord = (last - 1) >>> 6;
+		long firstMask = -1L << first;
+		long lastMask = -1L >>> -last;
+		if (firstWord == lastWord) {
+			words[firstWord] |= firstMask & lastMask;
+			return;
+		}
+		words[firstWord] |= firstMask;
+		Arrays.fill(words, firstWord + 1, lastWord, -1L);
+		words[lastWord] |= lastMask;
+	}
+
+	// Purpose: Mark the slots busy in the other grid busy in this grid
+	// (the grids must have the same slots)
+	public void or(BusyGrid grid) {
+		if (grid.from != from || grid.size != size)
+			throw new IllegalArgumentException("The grids cover different times");
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= grid.words[i];
+		}
+	}
+
+	public boolean isBusy(int slot) {
+		return (words[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	// Purpose: Get the index of the first free slot from the index (size when
+	// there is none)
+	public int nextFree(int slot) {
+		if (slot >= size)
+			return size;
+		int index = slot >>> 6;
+		long word = ~words[index] & (-1L << slot);
+		while (word == 0) {
+			if (++index == words.length)
+				return size;
+			word = ~words[index];
+		}
+		return Math.min((index << 6) + Long.numberOfTrailingZeros(word), size);
+	}
+
+	// Purpose: Get the index of the first busy slot from the index (size when
+	// there is none)
+	public int nextBusy(int slot) {
+		if (slot >= size)
+			return size;
+		int index = slot >>> 6;
+		long word = words[index] & (-1L << slot);
+		while (word == 0) {
+			if (++index == words.length)
+				return size;
+			word = words[index];
+		}
+		return Math.min((index << 6) + Long.numberOfTrailingZeros(word), size);
+	}
+}
@@ -1,11 +1,13 @@
 package iCalendarEditor;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.function.LongUnaryOperator;
 
 //Used as a variable type for calendar content (Course, NormalEvent)
-public interface CalContent extends Cloneable{
+public interface CalContent extends Cloneable, ICSWriter.Writable{
 	
 	CalContent[] CLIPBOARD = new CalContent[1];
 	
@@ -15,19 +17,31 @@ public interface CalContent extends Cloneable{
 	//			mostly used to change the American eastern time zone (-5) to Chinese time zone (+8)
 	void changeTimeZoneBase(TimeZone src, TimeZone dest);
 	
+	//Purpose: Convert all the times of the events by the converter (used by ICalendar.rebase())
+	void convertTimes(LongUnaryOperator convert);
+	
 	//Purpose: Change the DST system to non-DST system
 	//			mostly used to change the American DST to Chinese non-DST system
 	void fixDST();
 	
+	//Purpose: Change the DST system of the table to non-DST system
+	void fixDST(DSTTable table);
+	
 	//Purpose: Change the non-DST system to DST system
 	void setDST();
 	
+	//Purpose: Change the non-DST system to the DST system of the table
+	void setDST(DSTTable table);
+	
 	//Purpose: Export the content to ics format for output
 	String exportICSFormat();
 	
 	//Purpose: Directly write the content to the output file
 	void exportToFile(PrintWriter output);
 	
+	//Purpose: Write the content in the ics format to the writer
+	void writeICS(ICSWriter writer) throws IOException;
+	
 	
 	//Purpose: Describe the calendar content in the overview format
 	String overviewString();
@@ -42,9 +56,13 @@ public interface CalContent extends Cloneable{
 	
 	Object clone();
 	
-	//Purpose: Copy the calendar content -> put the clone of the calendar content into the clipboard
+	//Purpose: Get a copy of the calendar content sharing the events with it (copy-on-write)
+	//			the shared events are copied only when one of the copies is changed
+	CalContent sharedCopy();
+	
+	//Purpose: Copy the calendar content -> put a shared copy of the calendar content into the clipboard
 	//			Working with copy and paste (defined in calendarMenu)
 	public default void copy() {
-		CLIPBOARD[0] = (CalContent)this.clone();
+		CLIPBOARD[0] = this.sharedCopy();
 	}
 }
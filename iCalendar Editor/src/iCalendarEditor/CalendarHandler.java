@@ -0,0 +1,18 @@
+package iCalendarEditor;
+
+//Receiver of the content read from a ics file (used by ICSReader)
+//The events are pushed one by one in the order of the file, so a file can be
+//filtered, counted or exported again without keeping the whole calendar in memory
+public interface CalendarHandler {
+
+	// Purpose: Called when the beginning of the calendar (BEGIN:VCALENDAR) is read
+	default void onCalendarStart() {
+	}
+
+	// Purpose: Called when an event (lecture/normal event) is read
+	void onEvent(Event event);
+
+	// Purpose: Called when the end of the calendar (END:VCALENDAR) is read
+	default void onCalendarEnd() {
+	}
+}
@@ -0,0 +1,414 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+//Binary snapshot of a calendar
+//Keeps the Course -> Lecture structure which is lost in the ics format
+//Layout (version 4):
+//	magic "ICSN", version, time unit
+//	string table: number of strings, then each string as length + UTF-8 bytes
+//	name of the calendar, number of contents, then the contents
+//	(course: summary, number of lectures, lectures / normal event)
+//Strings (and the ids of the time zones of the events and repeat rules) are
+//written as indexes of the string table (0 for null) and the times as
+//differences from a nearby time (the start of the previous event, the start of
+//the event, the previous exception) in the time unit, all as variable-length
+//integers
+//Only the snapshots of the same version are read
+public class CalendarSnapshot {
+
+	// Extension of the snapshot files
+	public static final String EXTENSION = ".icsnap";
+	public static final int VERSION = 4;
+	private static final byte[] MAGIC = { 'I', 'C', 'S', 'N' };
+
+	// Type marks of the calendar contents
+	private static final byte COURSE = 0;
+	private static final byte NORMAL_EVENT = 1;
+	// Flags of the events
+	private static final int HAS_RRULE = 1;
+	private static final int HAS_ALARM = 2;
+	private static final int HAS_END_DT = 4;
+	// Flag of the repeat rules with the ordinals of the days (with BYMONTH 0 - 12)
+	private static final int HAS_NTH_DAYS = 0x10;
+	// Time units (milliseconds) tried from the largest
+	private static final long[] TIME_UNITS = { 60 * 1000, 1000, 1 };
+
+	// Purpose: Write the snapshot of the calendar to the file
+	public static void write(ICalendar iCal, File path) throws IOException {
+		Writer writer = new Writer();
+		writer.writeCalendar(iCal);
+		try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer[] buffers = writer.finish();
+			// Gathering write of the header, the string table and the contents
+			while (buffers[buffers.length - 1].hasRemaining())
+				channel.write(buffers);
+		}
+	}
+
+	// Purpose: Read the calendar of the snapshot file
+	// the name saved in the snapshot is used and the path is the snapshot file
+	public static ICalendar read(File path) throws IOException {
+		ICalendar iCal = new ICalendar(null, path);
+		iCal.setName(new Reader(map(path)).readCalendar(iCal));
+		return iCal;
+	}
+
+	// Purpose: Read the contents of the snapshot file into the calendar
+	// the name saved in the snapshot is ignored
+	public static void read(File path, ICalendar iCal) throws IOException {
+		new Reader(map(path)).readCalendar(iCal);
+	}
+
+	private static ByteBuffer map(File path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("The snapshot file is too large");
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	// Encoder of the snapshot
+	// The contents are encoded first, the string table is built meanwhile and put
+	// in front of them when finished
+	private static class Writer {
+
+		private final HashMap<String, Integer> stringIndexes = new HashMap<>();
+		private final ArrayList<String> strings = new ArrayList<>();
+		private ByteBuffer body = ByteBuffer.allocate(1 << 16);
+		private long unit;
+		private long previousStart;
+
+		void writeCalendar(ICalendar iCal) {
+			unit = timeUnit(iCal);
+			writeString(iCal.getName());
+			writeNumber(iCal.getContent().size());
+			for (CalContent calContent : iCal.getContent()) {
+				if (calContent instanceof Course) {
+					Course course = (Course) calContent;
+					writeByte(COURSE);
+					writeString(course.getSummary());
+					writeNumber(course.getLectures().size());
+					for (Lecture lecture : course.getLectures()) {
+						writeEvent(lecture);
+						writeString(lecture.getInnerLocation());
+						writeString(lecture.getBuilding());
+						writeString(lecture.getRoom());
+					}
+				} else {
+					NormalEvent normalEvent = (NormalEvent) calContent;
+					writeByte(NORMAL_EVENT);
+					writeEvent(normalEvent);
+					writeString(normalEvent.getLocation());
+				}
+			}
+		}
+
+		// Purpose: Get the header, the string table and the contents ready for writing
+		ByteBuffer[] finish() {
+			Writer head = new Writer();
+			head.body = ByteBuffer.allocate(1 << 12);
+			head.body.put(MAGIC);
+			head.writeByte(VERSION);
+			head.writeByte(unit == TIME_UNITS[0] ? 0 : unit == TIME_UNITS[1] ? 1 : 2);
+			head.writeNumber(strings.size());
+			for (String str : strings) {
+				byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+				head.writeNumber(bytes.length);
+				head.ensure(bytes.length);
+				head.body.put(bytes);
+			}
+			head.body.flip();
+			body.flip();
+			return new ByteBuffer[] { head.body, body };
+		}
+
+		// Purpose: Find the largest time unit all times of the calendar can be divided by
+		private static long timeUnit(ICalendar iCal) {
+			int unitIndex = 0;
+			for (CalContent calContent : iCal.getContent()) {
+				if (calContent instanceof Course) {
+					for (Lecture lecture : ((Course) calContent).getLectures())
+						unitIndex = timeUnit(lecture, unitIndex);
+				} else
+					unitIndex = timeUnit((Event) calContent, unitIndex);
+			}
+			return TIME_UNITS[unitIndex];
+		}
+
+		private static int timeUnit(Event event, int unitIndex) {
+			unitIndex = timeUnit(event.getDtStartMillis(), unitIndex);
+			unitIndex = timeUnit(event.getDtEndMillis(), unitIndex);
+			RepeatRule rRule = event.getRRule();
+			if (rRule != null) {
+				if (rRule.getEndDtMillis() != Event.NO_TIME)
+					unitIndex = timeUnit(rRule.getEndDtMillis(), unitIndex);
+				for (long exception : rRule.getExceptionTimes())
+					unitIndex = timeUnit(exception, unitIndex);
+			}
+			return unitIndex;
+		}
+
+		private static int timeUnit(long time, int unitIndex) {
+			while (time % TIME_UNITS[unitIndex] != 0)
+				unitIndex++;
+			return unitIndex;
+		}
+
+		private void writeEvent(Event event) {
+			RepeatRule rRule = event.getRRule();
+			Alarm alarm = event.getAlarm();
+			long dtStart = event.getDtStartMillis() / unit;
+			writeString(event.getSummary());
+			writeString(event.getZone().getID());
+			writeByte((rRule != null ? HAS_RRULE : 0) | (alarm != null ? HAS_ALARM : 0)
+					| (rRule != null && rRule.getEndDtMillis() != Event.NO_TIME ? HAS_END_DT : 0));
+			writeTime(dtStart - previousStart);
+			writeTime(event.getDtEndMillis() / unit - dtStart);
+			previousStart = dtStart;
+			writeString(event.getDescription());
+			if (rRule != null) {
+				writeByte(rRule.getFrequency());
+				writeString(rRule.getZone().getID());
+				if (rRule.getEndDtMillis() != Event.NO_TIME)
+					writeTime(rRule.getEndDtMillis() / unit - dtStart);
+				writeNumber(rRule.getInterval());
+				writeNumber(rRule.getCount());
+				writeByte(rRule.getByDay());
+				// BYMONTH and whether the ordinals of the days follow
+				int[] nthDays = rRule.getNthDays();
+				writeByte(rRule.getByMonth() | (nthDays != null ? HAS_NTH_DAYS : 0));
+				if (nthDays != null) {
+					for (int ordinals : nthDays)
+						writeNumber(ordinals);
+				}
+				writeString(rRule.getLocalZone() != null ? rRule.getLocalZone().getId() : null);
+				writeNumber(rRule.getExceptionNumber());
+				long previous = dtStart;
+				for (long exception : rRule.getExceptionTimes()) {
+					long time = exception / unit;
+					writeTime(time - previous);
+					previous = time;
+				}
+			}
+			if (alarm != null) {
+				writeTime(alarm.getTimeAhead());
+				writeString(alarm.getDescription());
+			}
+		}
+
+		private void writeString(String str) {
+			if (str == null) {
+				writeNumber(0);
+				return;
+			}
+			Integer index = stringIndexes.get(str);
+			if (index == null) {
+				strings.add(str);
+				index = strings.size();
+				stringIndexes.put(str, index);
+			}
+			writeNumber(index);
+		}
+
+		private void writeByte(int b) {
+			ensure(1);
+			body.put((byte) b);
+		}
+
+		// Signed values are zigzag encoded (small negative values stay short)
+		private void writeTime(long value) {
+			writeNumber((value << 1) ^ (value >> 63));
+		}
+
+		// Unsigned variable-length integer (7 bits per byte, lowest bits first)
+		private void writeNumber(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				body.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			body.put((byte) value);
+		}
+
+		private void ensure(int length) {
+			if (body.remaining() < length) {
+				ByteBuffer temp = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + length));
+				body.flip();
+				temp.put(body);
+				body = temp;
+			}
+		}
+	}
+
+	// Decoder of the snapshot
+	private static class Reader {
+
+		private final ByteBuffer buffer;
+		private final String[] strings;
+		// Time zones of the strings used as time zone ids (found on first use)
+		private final TimeZone[] zones;
+		private final long unit;
+		private long previousStart;
+
+		Reader(ByteBuffer buffer) throws IOException {
+			this.buffer = buffer;
+			try {
+				for (byte b : MAGIC) {
+					if (buffer.get() != b)
+						throw new IOException("The file is not a calendar snapshot");
+				}
+				int version = buffer.get();
+				if (version != VERSION)
+					throw new IOException("Unsupported calendar snapshot version " + version);
+				int unitIndex = buffer.get();
+				if (unitIndex < 0 || unitIndex >= TIME_UNITS.length)
+					throw new IOException("The calendar snapshot is damaged");
+				unit = TIME_UNITS[unitIndex];
+				// String table (the bytes are copied once and decoded string by string)
+				// (the counts are checked against the bytes left, so a damaged count cannot
+				// allocate a huge array)
+				strings = new String[readCount()];
+				zones = new TimeZone[strings.length];
+				byte[] bytes = new byte[256];
+				for (int i = 0; i < strings.length; i++) {
+					int length = readCount();
+					if (length > bytes.length)
+						bytes = new byte[Math.max(length, bytes.length * 2)];
+					buffer.get(bytes, 0, length);
+					strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+				}
+			} catch (BufferUnderflowException e) {
+				throw new IOException("The calendar snapshot is damaged", e);
+			}
+		}
+
+		// Purpose: Read the contents into the calendar
+		// return the name of the calendar
+		String readCalendar(ICalendar iCal) throws IOException {
+			try {
+				String name = readString();
+				int size = readCount();
+				for (int i = 0; i < size; i++) {
+					byte type = buffer.get();
+					if (type == COURSE) {
+						Course course = new Course(readString());
+						int lectureNumber = readCount();
+						for (int j = 0; j < lectureNumber; j++) {
+							Lecture lecture = new Lecture();
+							readEvent(lecture);
+							lecture.setInnerLocation(readString());
+							lecture.setBuilding(readString());
+							lecture.setRoom(readString());
+							course.add(lecture);
+						}
+						iCal.add(course);
+					} else if (type == NORMAL_EVENT) {
+						NormalEvent normalEvent = new NormalEvent();
+						readEvent(normalEvent);
+						normalEvent.setLocation(readString());
+						iCal.add(normalEvent);
+					} else
+						throw new IOException("The calendar snapshot is damaged");
+				}
+				return name;
+			} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+				throw new IOException("The calendar snapshot is damaged", e);
+			}
+		}
+
+		// The times are in the saved time zones
+		private void readEvent(Event event) throws IOException {
+			event.setSummary(readString());
+			event.setZone(readZone());
+			int flags = buffer.get();
+			long dtStart = previousStart + readTime();
+			previousStart = dtStart;
+			event.setDtStartMillis(dtStart * unit);
+			event.setDtEndMillis((dtStart + readTime()) * unit);
+			event.setDescription(readString());
+			if ((flags & HAS_RRULE) != 0) {
+				int frequency = buffer.get();
+				TimeZone zone = readZone();
+				long endDt = (flags & HAS_END_DT) != 0 ? (dtStart + readTime()) * unit : Event.NO_TIME;
+				RepeatRule rRule = new RepeatRule(frequency, endDt, zone, (int) readNumber());
+				rRule.setCount((int) readNumber());
+				rRule.setByDay(buffer.get());
+				int byMonth = buffer.get();
+				rRule.setByMonth(byMonth & ~HAS_NTH_DAYS);
+				if ((byMonth & HAS_NTH_DAYS) != 0) {
+					int[] nthDays = new int[7];
+					for (int d = 0; d < nthDays.length; d++)
+						nthDays[d] = (int) readNumber();
+					rRule.setNthDays(nthDays);
+				}
+				String localZone = readString();
+				if (localZone != null)
+					rRule.setLocalZone(ZoneId.of(localZone));
+				int exceptionNumber = readCount();
+				long previous = dtStart;
+				for (int i = 0; i < exceptionNumber; i++) {
+					previous += readTime();
+					rRule.addException(previous * unit);
+				}
+				event.setRRulr(rRule);
+			}
+			if ((flags & HAS_ALARM) != 0)
+				event.setAlarm(new Alarm((int) readTime(), readString()));
+		}
+
+		private String readString() {
+			int index = (int) readNumber();
+			return index == 0 ? null : strings[index - 1];
+		}
+
+		// Read the id of a time zone
+		private TimeZone readZone() throws IOException {
+			int index = (int) readNumber();
+			TimeZone zone = zones[index - 1];
+			if (zone == null) {
+				String id = strings[index - 1];
+				zone = TimeZone.getTimeZone(id);
+				if (!zone.getID().equals(id))
+					throw new IOException("Unknown time zone \"" + id + "\" in the calendar snapshot");
+				zones[index - 1] = zone;
+			}
+			return zone;
+		}
+
+		// Read the number of the following items (strings, contents, lectures,
+		// exceptions or bytes), each of them takes at least one byte
+		private int readCount() throws IOException {
+			long count = readNumber();
+			if (count < 0 || count > buffer.remaining())
+				throw new IOException("The calendar snapshot is damaged");
+			return (int) count;
+		}
+
+		private long readTime() {
+			long value = readNumber();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private long readNumber() {
+			long value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return value;
+			}
+		}
+	}
+}
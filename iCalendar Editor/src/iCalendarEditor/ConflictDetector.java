@@ -0,0 +1,192 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Detector of the conflicting (overlapping) occurrences of the events of calendars
+//The repeat rules of the lectures and normal events are expanded and the
+//occurrences are swept in time order: the occurrences still going on are kept in a
+//heap by end time, so each occurrence is only compared with the ones it overlaps
+//(O(n log n + k) for n occurrences and k conflicts)
+//A event repeated forever is expanded to one year after the latest start time of
+//the events checked
+public class ConflictDetector {
+
+	private static final long HORIZON = ICSDateTime.MILLISECONDS_PER_DAY * 366;
+
+	// A pair of overlapping occurrences (the first one starts not later than the
+	// second one) and the calendars they belong to
+	public static class Conflict implements Comparable<Conflict> {
+
+		private final ICalendar firstCalendar;
+		private final Occurrence first;
+		private final ICalendar secondCalendar;
+		private final Occurrence second;
+
+		public Conflict(ICalendar firstCalendar, Occurrence first, ICalendar secondCalendar, Occurrence second) {
+			this.firstCalendar = firstCalendar;
+			this.first = first;
+			this.secondCalendar = secondCalendar;
+			this.second = second;
+		}
+
+		public ICalendar getFirstCalendar() {
+			return firstCalendar;
+		}
+
+		public Occurrence getFirst() {
+			return first;
+		}
+
+		public ICalendar getSecondCalendar() {
+			return secondCalendar;
+		}
+
+		public Occurrence getSecond() {
+			return second;
+		}
+
+		// Compare the first occurrences, then the second ones
+		@Override
+		public int compareTo(Conflict conflict) {
+			int temp = first.compareTo(conflict.first);
+			return temp != 0 ? temp : second.compareTo(conflict.second);
+		}
+
+		// The names of the calendars are shown when the occurrences are in different
+		// calendars
+		@Override
+		public String toString() {
+			if (firstCalendar == secondCalendar)
+				return first + " <-> " + second;
+			return String.format("[%s] %s <-> [%s] %s", firstCalendar.getName(), first, secondCalendar.getName(),
+					second);
+		}
+	}
+
+	// An occurrence and the index of its calendar
+	private static class Entry implements Comparable<Entry> {
+
+		private final Occurrence occurrence;
+		private final int calendar;
+
+		Entry(Occurrence occurrence, int calendar) {
+			this.occurrence = occurrence;
+			this.calendar = calendar;
+		}
+
+		@Override
+		public int compareTo(Entry entry) {
+			return occurrence.compareTo(entry.occurrence);
+		}
+	}
+
+	// Purpose: Find the conflicting occurrences of the events in the calendar
+	// return the conflicts in time order
+	public static List<Conflict> findConflicts(ICalendar iCal) {
+		return findConflicts(Collections.singletonList(iCal));
+	}
+
+	// Purpose: Find the conflicting occurrences of the events in all the calendars
+	// (the occurrences in the same calendar or in different calendars)
+	// return the conflicts in time order
+	public static List<Conflict> findConflicts(List<ICalendar> calendars) {
+		// The events repeated forever are expanded to the horizon
+		long horizon = Long.MIN_VALUE;
+		for (ICalendar iCal : calendars) {
+			for (Event event : eventsOf(iCal)) {
+				horizon = Math.max(horizon, event.getDtStartMillis());
+			}
+		}
+		horizon = horizon > Long.MAX_VALUE - HORIZON ? Long.MAX_VALUE : horizon + HORIZON;
+		// Expand the occurrences
+		ArrayList<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < calendars.size(); i++) {
+			for (Event event : eventsOf(calendars.get(i))) {
+				RepeatRule rRule = event.getRRule();
+				long to = rRule != null && rRule.getEndDtMillis() == Event.NO_TIME && rRule.getCount() == 0 ? horizon
+						: Long.MAX_VALUE;
+				long duration = event.getDtEndMillis() - event.getDtStartMillis();
+				OccurrenceIterator occurrences = event.occurrences(Long.MIN_VALUE, to);
+				while (occurrences.hasNext()) {
+					long start = occurrences.nextLong();
+					entries.add(new Entry(new Occurrence(event, start, start + duration), i));
+				}
+			}
+		}
+		Collections.sort(entries);
+		// Sweep the occurrences in time order
+		ArrayList<Conflict> conflicts = new ArrayList<>();
+		PriorityQueue<Entry> active = new PriorityQueue<>(
+				(entry1, entry2) -> Long.compare(entry1.occurrence.getEndMillis(), entry2.occurrence.getEndMillis()));
+		for (Entry entry : entries) {
+			Occurrence occurrence = entry.occurrence;
+			// Drop the occurrences ended (touching is not overlapping)
+			while (!active.isEmpty() && active.peek().occurrence.getEndMillis() <= occurrence.getStartMillis())
+				active.poll();
+			for (Entry other : active) {
+				if (other.occurrence.overlaps(occurrence))
+					conflicts.add(new Conflict(calendars.get(other.calendar), other.occurrence,
+							calendars.get(entry.calendar), occurrence));
+			}
+			active.add(entry);
+		}
+		Collections.sort(conflicts);
+		return conflicts;
+	}
+
+	// Purpose: Find the conflicting occurrences of each calendar separately (e.g.
+	// the schedule of each student)
+	// parallelism > 1: the calendars are checked on that number of threads
+	// return the conflicts of each calendar in the order of the calendars
+	public static List<List<Conflict>> findConflictsEach(List<ICalendar> calendars, int parallelism) {
+		ArrayList<List<Conflict>> result = new ArrayList<>(calendars.size());
+		if (parallelism <= 1 || calendars.size() < 2) {
+			for (ICalendar iCal : calendars) {
+				result.add(findConflicts(iCal));
+			}
+			return result;
+		}
+		ArrayList<Callable<List<Conflict>>> tasks = new ArrayList<>(calendars.size());
+		for (ICalendar iCal : calendars) {
+			tasks.add(() -> findConflicts(iCal));
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, calendars.size()));
+		try {
+			for (Future<List<Conflict>> task : pool.invokeAll(tasks)) {
+				result.add(task.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Conflict detection is interrupted", e);
+		} finally {
+			pool.shutdown();
+		}
+		return result;
+	}
+
+	// Get the lectures and normal events with start time of the calendar
+	private static ArrayList<Event> eventsOf(ICalendar iCal) {
+		ArrayList<Event> events = new ArrayList<>();
+		for (CalContent calContent : iCal.getContent()) {
+			if (calContent instanceof Course) {
+				for (Lecture lecture : ((Course) calContent).getLectures()) {
+					if (lecture.getDtStartMillis() != Event.NO_TIME)
+						events.add(lecture);
+				}
+			} else if (((Event) calContent).getDtStartMillis() != Event.NO_TIME)
+				events.add((Event) calContent);
+		}
+		return events;
+	}
+}
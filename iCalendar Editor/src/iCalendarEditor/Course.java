@@ -1,14 +1,29 @@
 package iCalendarEditor;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
 
 public class Course implements CalContent {
 
+	// Shared instance of the StringPool (the same object as the summaries of the
+	// lectures)
 	private String summary;
 	private ArrayList<Lecture> lectures;
+	// Number of the courses sharing the lecture list (the clones of the course,
+	// copy-on-write: the list is copied before a course changes it unless it is
+	// the last one using it, and the lectures in both lists are copied before
+	// changed), null when not shared
+	private AtomicInteger lectureUsers;
+	// The calendar the course is in (keeps the course index of the calendar
+	// consistent when renamed)
+	private ICalendar calendar;
 
 	Course() {
 		this("Unnamed course");
@@ -29,11 +44,13 @@ public class Course implements CalContent {
 	Course(String summary, Lecture lecture) {
 		this(summary);
 		this.lectures.add(lecture);
+		lecture.setCourse(this);
 	}
 
 	Course(String summary, ArrayList<Lecture> lectures) {
-		this.summary = summary;
+		this.summary = StringPool.intern(summary);
 		this.lectures = lectures;
+		ownedBy(lectures);
 	}
 
 	public String getSummary() {
@@ -50,19 +67,123 @@ public class Course implements CalContent {
 
 	public void setSummary(String summary) {
 		// Reset summary for the course
-		this.summary = summary;
+		String oldSummary = this.summary;
+		this.summary = StringPool.intern(summary);
+		if (calendar != null)
+			calendar.courseRenamed(this, oldSummary);
 		// Reset summary for the lectures in the course
+		ownAllLectures();
 		for (Lecture lecture : lectures) {
 			lecture.setSummary(summary);
 		}
 	}
 
-	public ArrayList<Lecture> getLectures() {
-		return lectures;
+	ICalendar getCalendar() {
+		return calendar;
+	}
+
+	// Set by the calendar when the course is added or removed
+	void setCalendar(ICalendar calendar) {
+		this.calendar = calendar;
+	}
+
+	// Called by the lectures of the course (and the course itself) after the
+	// lectures or their times are changed -> the calendar updates its time index
+	void lectureChanged() {
+		if (calendar != null)
+			calendar.contentChanged(this);
+	}
+
+	// Make the lectures tell this course when they are changed
+	private void ownedBy(List<Lecture> lectures) {
+		for (Lecture lecture : lectures) {
+			lecture.setCourse(this);
+		}
+	}
+
+	// The list cannot be changed (the lectures are changed through the methods of
+	// the course)
+	// The lectures may be shared with other courses -> use getEditableLecture()
+	// to change a lecture
+	public List<Lecture> getLectures() {
+		return Collections.unmodifiableList(lectures);
 	}
 
 	public void setLectures(ArrayList<Lecture> lectures) {
+		// The old lectures are not held by this course any more
+		if (lectureUsers == null) {
+			for (Lecture lecture : this.lectures) {
+				lecture.removeHolder();
+			}
+		} else
+			lectureUsers.decrementAndGet();
 		this.lectures = lectures;
+		this.lectureUsers = null;
+		ownedBy(lectures);
+		lectureChanged();
+	}
+
+	// Purpose: Get the lecture at the index to change it
+	// a lecture shared with other courses is replaced by its copy first
+	public Lecture getEditableLecture(int index) {
+		ownLectures();
+		Lecture lecture = lectures.get(index);
+		if (lecture.isShared()) {
+			lecture.removeHolder();
+			lecture = (Lecture) lecture.clone();
+			lecture.setCourse(this);
+			lectures.set(index, lecture);
+			lectureChanged();
+		}
+		return lecture;
+	}
+
+	// Purpose: Remove the lecture at the index from the course
+	public Lecture remove(int index) {
+		ownLectures();
+		Lecture lecture = lectures.remove(index);
+		lecture.removeHolder();
+		if (lecture.getCourse() == this)
+			lecture.setCourse(null);
+		lectureChanged();
+		return lecture;
+	}
+
+	// Copy the lecture list when it is shared with other courses
+	// the lectures are held by both lists now
+	// The last course using the shared list keeps it (the lectures tell this
+	// course again)
+	private void ownLectures() {
+		if (lectureUsers == null)
+			return;
+		if (lectureUsers.get() == 1) {
+			ownedBy(lectures);
+			lectureUsers = null;
+			return;
+		}
+		lectureUsers.decrementAndGet();
+		lectures = new ArrayList<>(lectures);
+		for (Lecture lecture : lectures) {
+			lecture.addHolder();
+		}
+		lectureUsers = null;
+	}
+
+	// Make all the lectures owned by the course before changing them
+	private void ownAllLectures() {
+		ownLectures();
+		boolean replaced = false;
+		for (int i = 0; i < lectures.size(); i++) {
+			if (lectures.get(i).isShared()) {
+				lectures.get(i).removeHolder();
+				Lecture lecture = (Lecture) lectures.get(i).clone();
+				lecture.setCourse(this);
+				lectures.set(i, lecture);
+				replaced = true;
+			}
+		}
+		if (replaced)
+			lectureChanged();
 	}
 
 	// Purpose: Get the earliest start time of the course
@@ -83,10 +204,12 @@ public class Course implements CalContent {
 	public GregorianCalendar getDtLast() {
 		if (lectures.isEmpty())
 			return null;
+		// A lecture series repeating forever has no last time (null)
 		GregorianCalendar temp = lectures.get(0).getDtLast();
-		for (int i = 1; i < lectures.size(); i++) {
-			if (lectures.get(i).getDtEnd().compareTo(temp) > 0)
-				temp = lectures.get(i).getDtLast();
+		for (int i = 1; i < lectures.size() && temp != null; i++) {
+			GregorianCalendar last = lectures.get(i).getDtLast();
+			if (last == null || last.compareTo(temp) > 0)
+				temp = last;
 		}
 		return temp;
 	}
@@ -96,98 +219,95 @@ public class Course implements CalContent {
 	}
 
 	public void add(Lecture lecture) {
+		ownLectures();
 		lectures.add(lecture);
+		lecture.setCourse(this);
+		lectureChanged();
 	}
 
 	// Purpose: Change the time zone the event is based on
 	// mostly used to change the American east time zone (-5) to Chinese time zone
 	// (+8)
 	public void changeTimeZoneBase(TimeZone src, TimeZone dest) {
+		ownAllLectures();
 		for (int i = 0; i < lectures.size(); i++) {
 			lectures.get(i).changeTimeZoneBase(src, dest);
 		}
 	}
 
+	// Purpose: Convert all the times of the lectures by the converter
+	public void convertTimes(LongUnaryOperator convert) {
+		ownAllLectures();
+		for (Lecture lecture : lectures) {
+			lecture.convertTimes(convert);
+		}
+	}
+
 	// Purpose: Change the DST system to non-DST system
 	// mostly used to change the American DST to Chinese non-DST system
 	public void fixDST() {
+		fixDST(DSTTable.AMERICAN);
+	}
+
+	// Purpose: Change the DST system of the table to non-DST system
+	public void fixDST(DSTTable table) {
+		ownAllLectures();
 		for (Lecture lecture : lectures) {
-			lecture.fixDST();
+			lecture.fixDST(table);
 		}
 	}
 
 	// Purpose: Change the non-DST system to DST system
 	public void setDST() {
+		setDST(DSTTable.AMERICAN);
+	}
+
+	// Purpose: Change the non-DST system to the DST system of the table
+	public void setDST(DSTTable table) {
+		ownAllLectures();
 		for (Lecture lecture : lectures) {
-			lecture.fixDST();
+			lecture.setDST(table);
 		}
 	}
 
 	// Purpose: Optimize the course to combine the individual lectures into series
 	// and add alarms
 	public void optimize() {
-		// Sort the lectures of the course making them in time order
-		java.util.Collections.sort(lectures);
-		// Traverse all lectures make them base of a series of lectures or extend a
-		// series of lectures
-		for (int i = 0; i < lectures.size(); i++) {
-			// Check whether this lecture is a lecture series
-			if (lectures.get(i).getRRule() == null) {
-				// Check whether this lecture can extend any of the existing series of lectures
-				boolean flag = true;
-				for (int j = 0; j < i; j++) {
-					// Can extend -> extend
-					if (lectureExtend(lectures.get(j), lectures.get(i))) {
-						i--;
-						flag = false;
-						break;
-					}
-				}
-				// Cannot extend -> make it base of a series of lectures -> add repeat rule and
-				// alarm
-				if (flag) {
-					lectures.get(i).setRRulr(new RepeatRule((GregorianCalendar) lectures.get(i).getDtEnd().clone()));
-					lectures.get(i).setAlarm(new Alarm(30, lectures.get(i).getSummary()));
-				}
-			}
-		}
+		ownAllLectures();
+		// Lectures in time order with the combined lectures removed
+		ArrayList<Lecture> temp = SeriesBuilder.buildSeries(lectures);
+		lectures.clear();
+		lectures.addAll(temp);
+		ownedBy(lectures);
+		lectureChanged();
 	}
 
-	private boolean lectureExtend(Lecture series, Lecture lecture) {
-		// Check the basic information of the lecture
-		if (series.basiclyEqualTo(lecture)) {
-			GregorianCalendar temp = (GregorianCalendar) series.getRRule().getEndDt().clone();
-			temp.add(GregorianCalendar.DATE, 7);
-			// Extend the lecture series
-			series.getRRule().setEndDt((GregorianCalendar) lecture.getDtEnd().clone());
-			series.combineDescription(lecture);
-			lectures.remove(lecture);
-			// Add exceptions (for vacations)
-			while (temp.compareTo(series.getRRule().getEndDt()) < 0) {
-				series.getRRule().addException((GregorianCalendar) temp.clone());
-				temp.add(GregorianCalendar.DATE, 7);
-			}
-			return true;
-		} else
-			return false;
+	// Purpose: Merge the weekly series on different days of week into series
+	// repeated by day (one VEVENT for e.g. Monday, Wednesday and Friday)
+	// return the number of series (VEVENTs) saved
+	public int mergeWeekdays() {
+		ownAllLectures();
+		int saved = SeriesBuilder.mergeWeekdays(lectures);
+		ownedBy(lectures);
+		lectureChanged();
+		return saved;
 	}
 
 	// Purpose: Export the course in the ics format by string
 	public String exportICSFormat() {
-		StringBuilder temp = new StringBuilder();
-		// Connect each lecture in the course
+		return ICSWriter.toString(this);
+	}
+
+	// Purpose: Write each lecture of the course in the ics format
+	public void writeICS(ICSWriter writer) throws IOException {
 		for (Lecture lecture : lectures) {
-			temp.append(lecture.exportICSFormat());
+			lecture.writeICS(writer);
 		}
-		return temp.toString();
 	}
 
 	// Purpose: Directly write the event to the output file
 	public void exportToFile(PrintWriter output) {
-		// Print each lecture in the course
-		for (Lecture lecture : lectures) {
-			lecture.exportToFile(output);
-		}
+		output.print(exportICSFormat());
 	}
 
 	// Purpose: Describe the course in the overview format
@@ -200,16 +320,24 @@ public class Course implements CalContent {
 				getSummary(19));
 	}
 
+	// The clone shares the lectures with the course until either of them is
+	// changed (copy-on-write)
 	public Object clone() {
 		try {
 			Course temp = (Course) super.clone();
-			temp.setLectures(new ArrayList<Lecture>());
-			for (int i = 0; i < getLectures().size(); i++) {
-				temp.getLectures().add((Lecture) (getLectures().get(i).clone()));
-			}
+			temp.calendar = null;
+			if (lectureUsers == null)
+				lectureUsers = new AtomicInteger(1);
+			lectureUsers.incrementAndGet();
+			temp.lectureUsers = lectureUsers;
 			return temp;
 		} catch (CloneNotSupportedException e) {
 			return null;
 		}
 	}
+
+	// The clone of the course already shares the lectures
+	public CalContent sharedCopy() {
+		return (CalContent) clone();
+	}
 }
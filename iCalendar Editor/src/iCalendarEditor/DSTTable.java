@@ -0,0 +1,104 @@
+package iCalendarEditor;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Table of the DST periods of a time zone taken from its ZoneRules
+//The periods of each year (UTC) are computed once and cached, so checking a time
+//is a comparison with a few numbers of its year instead of building calendars
+//Used by Event.fixDST() and Event.setDST()
+public final class DSTTable {
+
+	// Years cached by each table (other years are computed on every check)
+	private static final int FIRST_YEAR = 1900;
+	private static final int YEARS = 300;
+
+	private static final ConcurrentHashMap<ZoneId, DSTTable> tables = new ConcurrentHashMap<>();
+
+	// The American DST (the KEANWISE files use the times of the American eastern
+	// time zone)
+	public static final DSTTable AMERICAN = of(ZoneId.of("America/New_York"));
+
+	private final ZoneRules rules;
+	// Year - FIRST_YEAR -> the DST periods of the year: start, end (exclusive) and
+	// the milliseconds added by the DST of each period
+	private final AtomicReferenceArray<long[]> years = new AtomicReferenceArray<>(YEARS);
+
+	private DSTTable(ZoneRules rules) {
+		this.rules = rules;
+	}
+
+	// Purpose: Get the table of the time zone (shared by all the users of the zone)
+	public static DSTTable of(ZoneId zone) {
+		return tables.computeIfAbsent(zone, key -> new DSTTable(key.getRules()));
+	}
+
+	// Purpose: Check whether the time (epoch milliseconds) is in the DST
+	public boolean isDST(long time) {
+		return savingAt(time) != 0;
+	}
+
+	// Purpose: Get the milliseconds added by the DST at the time (epoch
+	// milliseconds), 0 when the time is not in the DST or not set
+	public long savingAt(long time) {
+		if (time == Event.NO_TIME)
+			return 0;
+		long[] periods = periodsOf(ICSDateTime.civilDate(Math.floorDiv(time, ICSDateTime.MILLISECONDS_PER_DAY))
+				/ 10000);
+		for (int i = 0; i < periods.length; i += 3) {
+			if (time >= periods[i] && time < periods[i + 1])
+				return periods[i + 2];
+		}
+		return 0;
+	}
+
+	// Get the DST periods of the year
+	private long[] periodsOf(int year) {
+		int index = year - FIRST_YEAR;
+		if (index < 0 || index >= YEARS)
+			return computePeriods(year);
+		long[] periods = years.get(index);
+		if (periods == null) {
+			periods = computePeriods(year);
+			years.set(index, periods);
+		}
+		return periods;
+	}
+
+	// Compute the DST periods of the year from the transitions of the rules
+	private long[] computePeriods(int year) {
+		long from = ICSDateTime.epochDay(year, 1, 1) * ICSDateTime.MILLISECONDS_PER_DAY;
+		long to = ICSDateTime.epochDay(year + 1, 1, 1) * ICSDateTime.MILLISECONDS_PER_DAY;
+		long[] periods = new long[6];
+		int size = 0;
+		Instant instant = Instant.ofEpochMilli(from);
+		long start = from;
+		long saving = rules.getDaylightSavings(instant).toMillis();
+		ZoneOffsetTransition transition = rules.nextTransition(instant);
+		while (true) {
+			long end = transition != null ? Math.min(transition.getInstant().toEpochMilli(), to) : to;
+			long next = end < to ? rules.getDaylightSavings(transition.getInstant()).toMillis() : 0;
+			// The period ends when the DST ends or changes
+			if (end == to || next != saving) {
+				if (saving != 0) {
+					if (size == periods.length)
+						periods = Arrays.copyOf(periods, size * 2);
+					periods[size++] = start;
+					periods[size++] = end;
+					periods[size++] = saving;
+				}
+				if (end == to)
+					break;
+				start = end;
+				saving = next;
+			}
+			transition = rules.nextTransition(transition.getInstant());
+		}
+		return Arrays.copyOf(periods, size);
+	}
+}
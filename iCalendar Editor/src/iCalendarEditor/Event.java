@@ -1,18 +1,31 @@
 package iCalendarEditor;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.GregorianCalendar;
+import java.util.Objects;
 import java.util.TimeZone;
+import java.util.function.LongUnaryOperator;
 
 //The frame of the event
-public abstract class Event implements Comparable<Event>, Cloneable{
+public abstract class Event implements Comparable<Event>, Cloneable, ICSWriter.Writable{
 	
+	//Mark of a time not set
+	public static final long NO_TIME = Long.MIN_VALUE;
+	
+	//Shared instance of the StringPool (equal summaries are the same object)
 	private String summary;
-	private GregorianCalendar dtStart;
-	private GregorianCalendar dtEnd;
+	//Times are kept as epoch milliseconds, the GregorianCalendar objects are only built by the getters
+	private long dtStart = NO_TIME;
+	private long dtEnd = NO_TIME;
+	//Time zone of the GregorianCalendar objects of dtStart and dtEnd (shared, never modified)
+	private TimeZone zone = ICSDateTime.UTC;
 	private RepeatRule rRule;
 	private Alarm alarm;
 	private String description;
+	//Number of the content lists of the calendars/courses holding the event, counted when a shared list is copied
+	//			(copy-on-write: changed in place only when held by one list, otherwise copied before changed)
+	private int holders;
 	
 	public Event() {
 		
@@ -25,10 +38,23 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 	
 	//Full Constructor
 	public Event(String summary, GregorianCalendar dtStart, GregorianCalendar dtEnd, RepeatRule rRule, String description) {
-		this.summary = summary;
+		this.summary = StringPool.intern(summary);
+		setDtStart(dtStart);
+		setDtEnd(dtEnd);
+		this.rRule = rRule;
+		if (rRule != null) rRule.setEvent(this);
+		this.description = description;
+	}
+	
+	//Full Constructor with the times in epoch milliseconds
+	//zone: time zone of the GregorianCalendar objects returned by the getters
+	public Event(String summary, long dtStart, long dtEnd, TimeZone zone, RepeatRule rRule, String description) {
+		this.summary = StringPool.intern(summary);
 		this.dtStart = dtStart;
 		this.dtEnd = dtEnd;
+		this.zone = zone;
 		this.rRule = rRule;
+		if (rRule != null) rRule.setEvent(this);
 		this.description = description;
 	}
 	
@@ -43,23 +69,63 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 	}
 	
 	public void setSummary(String summary) {
-		this.summary = summary;
+		this.summary = StringPool.intern(summary);
+		keyChanged();
 	}
 	
+	//The GregorianCalendar is a new copy of the time (changing it does not change the event)
 	public GregorianCalendar getDtStart() {
-		return dtStart;
+		return dtStart == NO_TIME? null: ICSDateTime.toGregorianCalendar(dtStart, zone);
 	}
 	
 	public void setDtStart(GregorianCalendar dtStart) {
-		this.dtStart = dtStart;
+		this.dtStart = dtStart == null? NO_TIME: dtStart.getTimeInMillis();
+		if (dtStart != null) zone = dtStart.getTimeZone();
+		keyChanged();
+		occurrencesChanged();
 	}
 	
+	//The GregorianCalendar is a new copy of the time (changing it does not change the event)
 	public GregorianCalendar getDtEnd() {
-		return dtEnd;
+		return dtEnd == NO_TIME? null: ICSDateTime.toGregorianCalendar(dtEnd, zone);
 	}
 	
 	public void setDtEnd(GregorianCalendar dtEnd) {
+		this.dtEnd = dtEnd == null? NO_TIME: dtEnd.getTimeInMillis();
+		if (dtEnd != null) zone = dtEnd.getTimeZone();
+		keyChanged();
+		occurrencesChanged();
+	}
+	
+	//Start time in epoch milliseconds (NO_TIME when not set)
+	public long getDtStartMillis() {
+		return dtStart;
+	}
+	
+	public void setDtStartMillis(long dtStart) {
+		this.dtStart = dtStart;
+		keyChanged();
+		occurrencesChanged();
+	}
+	
+	//End time in epoch milliseconds (NO_TIME when not set)
+	public long getDtEndMillis() {
+		return dtEnd;
+	}
+	
+	public void setDtEndMillis(long dtEnd) {
 		this.dtEnd = dtEnd;
+		keyChanged();
+		occurrencesChanged();
+	}
+	
+	public TimeZone getZone() {
+		return zone;
+	}
+	
+	//The times are kept, only the GregorianCalendar objects and the exported times are in the new zone
+	public void setZone(TimeZone zone) {
+		this.zone = zone;
 	}
 	
 	public RepeatRule getRRule() {
@@ -68,6 +134,8 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 	
 	public void setRRulr(RepeatRule rRule) {
 		this.rRule = rRule;
+		if (rRule != null) rRule.setEvent(this);
+		occurrencesChanged();
 	}
 	
 	public Alarm getAlarm() {
@@ -89,6 +157,47 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 	
 	public abstract boolean isLocationAvailable();
 	
+	//Whether the event is held by more than one calendar/course
+	boolean isShared() {
+		return holders > 1;
+	}
+	
+	//Called when the list holding the event is copied (the event is in both lists)
+	void addHolder() {
+		holders = Math.max(holders, 1) + 1;
+	}
+	
+	//Called when the event is removed from a list holding it or replaced by its copy in the list
+	void removeHolder() {
+		if (holders > 0) holders--;
+	}
+	
+	//The clone is not held by any calendar or course yet
+	@Override
+	protected Object clone() throws CloneNotSupportedException {
+		Event temp = (Event)super.clone();
+		temp.holders = 0;
+		return temp;
+	}
+	
+	//Called after the summary or the times are changed
+	//			overridden by the events keeping values computed from them
+	protected void keyChanged() {
+		
+	}
+	
+	//Called after the times or the repeat rule are changed (also by the setters of the repeat rule)
+	//			overridden by the events telling their calendar to update its time index
+	protected void occurrencesChanged() {
+		
+	}
+	
+	//Check whether the location of the event is the same as the other one
+	//			overridden by the events able to compare their location without building the strings
+	protected boolean locationEquals(Event event) {
+		return getLocation().equals(event.getLocation());
+	}
+	
 	public String getDescription() {
 		return description;
 	}
@@ -97,93 +206,125 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 		this.description = description;
 	}
 	
+	//The GregorianCalendar is a new copy of the time (changing it does not change the event)
 	public GregorianCalendar getDtLast() {
 		return this.getRRule() != null?this.getRRule().getEndDt(): this.getDtEnd();
 	}
 	
+	//Purpose: Get the start times (epoch milliseconds) of the occurrences overlapping the time window [from, to)
+	//			the occurrences are generated lazily from the repeat rule
+	public OccurrenceIterator occurrences(long from, long to) {
+		return OccurrenceIterator.overlapping(rRule, dtStart, dtEnd - dtStart, from, to);
+	}
+	
 	//Comparable interface: enable the event to be sorted
 	//Compare the start time of two events
 	public int compareTo(Event obj) {
-		return dtStart.compareTo(obj.getDtStart());
+		return Long.compare(dtStart, obj.dtStart);
 	}
 	
 	//Check whether the two lectures have same summary, start time, end time, location
 	//Used in the optimize() to check whether the lecture can extend a lecture series
 	public boolean basiclyEqualTo(Event event) {
 		final long MILLISECONDS_PER_WEEK = 1000 * 60 * 60 * 24 * 7;
-		if (this.getSummary().equals(event.getSummary()) && //summary
-				this.getDtStart().getTimeInMillis() % MILLISECONDS_PER_WEEK == event.getDtStart().getTimeInMillis() % MILLISECONDS_PER_WEEK && //start time
-				this.getDtEnd().getTimeInMillis() % MILLISECONDS_PER_WEEK == event.getDtEnd().getTimeInMillis() % MILLISECONDS_PER_WEEK && //end time
-				this.getLocation().equals(event.getLocation())) return true;	//location
+		if (Objects.equals(this.summary, event.summary) && //summary (usually shared instances -> equal by reference first)
+				this.dtStart % MILLISECONDS_PER_WEEK == event.dtStart % MILLISECONDS_PER_WEEK && //start time
+				this.dtEnd % MILLISECONDS_PER_WEEK == event.dtEnd % MILLISECONDS_PER_WEEK && //end time
+				locationEquals(event)) return true;	//location
 		else return false;
 	}
 	
 	//Purpose: Change the time zone the event is based on
 	//			mostly used to change the American east time zone (-5) to Chinese time zone (+8)
+	//			the exceptions of the repeat rule are moved as well (they must match the occurrences)
 	public void changeTimeZoneBase(TimeZone src, TimeZone dest) {
-		dtStart.add(GregorianCalendar.MILLISECOND, src.getRawOffset() - dest.getRawOffset());
-		dtEnd.add(GregorianCalendar.MILLISECOND, src.getRawOffset() - dest.getRawOffset());
-		if (rRule != null) rRule.getEndDt().add(GregorianCalendar.MILLISECOND, src.getRawOffset() - dest.getRawOffset());
+		long difference = src.getRawOffset() - dest.getRawOffset();
+		convertTimes(time -> time + difference);
+	}
+	
+	//Purpose: Convert all the times of the event (start, end, end of the repeat rule and exceptions) by the converter
+	//			used to change the time zone base, the times not set are kept
+	public void convertTimes(LongUnaryOperator convert) {
+		if (dtStart != NO_TIME) dtStart = convert.applyAsLong(dtStart);
+		if (dtEnd != NO_TIME) dtEnd = convert.applyAsLong(dtEnd);
+		if (rRule != null) rRule.convertTimes(convert);
+		keyChanged();
+		occurrencesChanged();
 	}
 	
 	//Purpose: Change the DST system to non-DST system
 	//			mostly used to change the American DST to Chinese non-DST system
 	public void fixDST() {
-		if (isDST(dtStart)) dtStart.add(GregorianCalendar.HOUR_OF_DAY, 1);
-		if (isDST(dtEnd)) dtEnd.add(GregorianCalendar.HOUR_OF_DAY, 1);
+		fixDST(DSTTable.AMERICAN);
+	}
+	
+	//Purpose: Change the DST system of the table to non-DST system
+	//			the times in the DST are moved later by the DST saving
+	public void fixDST(DSTTable table) {
+		dtStart += table.savingAt(dtStart);
+		dtEnd += table.savingAt(dtEnd);
+		keyChanged();
+		occurrencesChanged();
 	}
 	
 	//Purpose: Change the non-DST system to DST system
 	public void setDST() {
-		if (isDST(dtStart)) dtStart.add(GregorianCalendar.HOUR_OF_DAY, -1);
-		if (isDST(dtEnd)) dtEnd.add(GregorianCalendar.HOUR_OF_DAY, -1);
+		setDST(DSTTable.AMERICAN);
 	}
 	
-	//Purpose: Check whether a time is among the DST
-	//			used in fixDST() and setDST()
-	private static boolean isDST(GregorianCalendar date) {
-		return date.compareTo(DSTStartTime(date.get(GregorianCalendar.YEAR))) >= 0 && date.compareTo(DSTEndTime(date.get(GregorianCalendar.YEAR))) <= 0;
+	//Purpose: Change the non-DST system to the DST system of the table
+	//			the times in the DST are moved earlier by the DST saving
+	public void setDST(DSTTable table) {
+		dtStart -= table.savingAt(dtStart);
+		dtEnd -= table.savingAt(dtEnd);
+		keyChanged();
+		occurrencesChanged();
 	}
 	
+	//Purpose: Change a time in epoch milliseconds to a ics style format
+	//			gives the same result as formatGregorianCalendarTime() of a GregorianCalendar of the time in the zone
+	public static String formatTime(long time, TimeZone zone) {
+		return appendTime(new StringBuilder(16), time, zone).toString();
+	}
 	
-	//Purpose: Get the start time of the DST (the second Sunday of March 2 A.M.)
-	//			used to help check whether a time is among the DST
-	private static GregorianCalendar DSTStartTime(int year) {
-		GregorianCalendar temp = new GregorianCalendar(year, 2, 1, 2, 0, 0);	// The March 1st of that year
-		temp.set(GregorianCalendar.DAY_OF_WEEK_IN_MONTH, 2);
-		temp.set(GregorianCalendar.DAY_OF_WEEK, GregorianCalendar.SUNDAY);
-		return temp;
+	//Purpose: Append a time in epoch milliseconds in the ics style format to the builder (the same as formatTime())
+	//			the digits are written directly without intermediate strings (the date is reused within a day)
+	public static StringBuilder appendTime(StringBuilder temp, long time, TimeZone zone) {
+		return ICSDateTime.formatter().append(temp, baseTime(time, zone));
 	}
 	
-	//Purpose: Get the end time of the DST (the first Sunday of November 2 A.M.)
-	//			used to help check whether a time is among the DST
-	private static GregorianCalendar DSTEndTime(int year) {
-		GregorianCalendar temp = new GregorianCalendar(year, 10, 1, 2, 0, 0);	// The November 1st of that year
-		temp.set(GregorianCalendar.DAY_OF_WEEK_IN_MONTH, 1);
-		temp.set(GregorianCalendar.DAY_OF_WEEK, GregorianCalendar.SUNDAY);
-		return temp;
+	//Purpose: Get the time written for a time in the zone
+	//			change the time zone base (the same as adding the difference of the raw offsets to the GregorianCalendar)
+	public static long baseTime(long time, TimeZone zone) {
+		time -= zone.getRawOffset();
+		return time + zone.getOffset(time);
 	}
 	
 	//Purpose: Change a GregorianCalendar type value to a ics style format
 	public static String formatGregorianCalendarTime(GregorianCalendar time) {
-		GregorianCalendar temp = (GregorianCalendar)time.clone();
-		//Change the time zone base if the time zone is not UTC
-		if (!temp.getTimeZone().equals(TimeZone.getTimeZone("UTC"))) temp.add(GregorianCalendar.MILLISECOND, TimeZone.getTimeZone("UTC").getRawOffset() - temp.getTimeZone().getRawOffset());
-		return String.format("%d%s%sT%s%s%sZ", temp.get(GregorianCalendar.YEAR), formatNumber(temp.get(GregorianCalendar.MONTH) + 1, 2), formatNumber(temp.get(GregorianCalendar.DATE), 2), formatNumber(temp.get(GregorianCalendar.HOUR_OF_DAY), 2), formatNumber(temp.get(GregorianCalendar.MINUTE), 2), formatNumber(temp.get(GregorianCalendar.SECOND), 2));
+		return formatTime(time.getTimeInMillis(), time.getTimeZone());
 	}
 	
 	//Purpose: Change a integer value to a formated string with specified length
 	//			increase the length by adding 0s at the beginning
 	public static String formatNumber(int num, int length) {
 		String temp = String.valueOf(num);
-		while (temp.length() < length) temp = "0" + temp;
-		return temp;
+		if (temp.length() >= length) return temp;
+		StringBuilder padded = new StringBuilder(length);
+		for (int i = temp.length(); i < length; i++) padded.append('0');
+		return padded.append(temp).toString();
 	}
 	
 	//Purpose: Generate the UID of the event
 	//			UID: SimpleICalEditor-[dtStart]-[dtEnd]-[this.hashCode()]
 	public String generateUID() {
-		return String.format("SimpleICalEditor-%s-%s-%d", formatGregorianCalendarTime(dtStart), formatGregorianCalendarTime(dtEnd), this.hashCode());
+		return appendUID(new StringBuilder(64)).toString();
+	}
+	
+	//Purpose: Append the UID of the event to the builder (the same as generateUID())
+	public StringBuilder appendUID(StringBuilder temp) {
+		appendTime(temp.append("SimpleICalEditor-"), dtStart, zone).append('-');
+		return appendTime(temp, dtEnd, zone).append('-').append(this.hashCode());
 	}
 	
 	//Purpose: Export the event in the ics format by string
@@ -203,38 +344,42 @@ public abstract class Event implements Comparable<Event>, Cloneable{
 	//	END:VALARM
 	//	END:VEVENT
 	public String exportICSFormat() {
-		StringBuilder temp = new StringBuilder("BEGIN:VEVENT\n");	//Event header
-		temp.append(String.format("DTSTAMP:%s\n", formatGregorianCalendarTime(new GregorianCalendar())));	//DTSTAMP
-		temp.append(String.format("UID:%s\n", generateUID()));	//UID
-		temp.append(String.format("SUMMARY:%s\n", summary));	//Summary
-		temp.append(String.format("DTSTART:%s\n", formatGregorianCalendarTime(dtStart)));	//dtStart
-		temp.append(String.format("DTEND:%s\n", formatGregorianCalendarTime(dtEnd)));	//dtStart
-		if (rRule != null) temp.append(rRule.exportICSFormat());	//Repeat rule
-		if (isLocationAvailable()) temp.append(String.format("LOCATION:%s\n", getLocation()));	//Location
-		if (alarm != null) temp.append(alarm.exportICSFormat());	//Alarm
-		temp.append("END:VEVENT\n");	//Event end sign
-		return temp.toString();
+		return ICSWriter.toString(this);
+	}
+	
+	//Purpose: Write the event in the ics format (the same lines as exportICSFormat())
+	//			DTSTAMP: the stamp of the writer in the default time zone base, SUMMARY and LOCATION are escaped
+	//			an event repeating in a time zone writes DTSTART and DTEND as local times with the TZID (no VTIMEZONE)
+	@Override
+	public void writeICS(ICSWriter writer) throws IOException {
+		writer.line("BEGIN", "VEVENT");	//Event header
+		writer.timeLine("DTSTAMP", baseTime(writer.getStamp(), TimeZone.getDefault()));	//DTSTAMP
+		writer.property("UID").value("SimpleICalEditor-").time(baseTime(dtStart, zone)).value('-').time(baseTime(dtEnd, zone)).value('-').value(this.hashCode()).endLine();	//UID
+		writer.textLine("SUMMARY", summary);	//Summary
+		if (rRule != null && rRule.getLocalZone() != null) {	//Repeat rule in a time zone -> local times
+			String tzid = ";TZID=" + rRule.getLocalZone().getId();
+			writer.property("DTSTART" + tzid).localTime(rRule.localTimeOf(dtStart)).endLine();	//dtStart
+			writer.property("DTEND" + tzid).localTime(rRule.localTimeOf(dtEnd)).endLine();	//dtEnd
+		} else {
+			writer.timeLine("DTSTART", baseTime(dtStart, zone));	//dtStart
+			writer.timeLine("DTEND", baseTime(dtEnd, zone));	//dtEnd
+		}
+		if (rRule != null) rRule.writeICS(writer);	//Repeat rule
+		if (isLocationAvailable()) writer.textLine("LOCATION", getLocation());	//Location
+		if (alarm != null) alarm.writeICS(writer);	//Alarm
+		writer.line("END", "VEVENT");	//Event end sign
 	}
 	
 	//Purpose: Directly write the event to the output file
 	public void exportToFile(PrintWriter output) {
-		output.println("BEGIN:VEVENT");	//Event header
-		output.println(String.format("DTSTAMP:%s", formatGregorianCalendarTime(new GregorianCalendar())));	//DTSTAMP
-		output.println(String.format("UID:%s", generateUID()));	//UID
-		output.println(String.format("SUMMARY:%s", summary));	//Summary
-		output.println(String.format("DTSTART:%s", formatGregorianCalendarTime(dtStart)));	//dtStart
-		output.println(String.format("DTEND:%s", formatGregorianCalendarTime(dtEnd)));	//dtStart
-		if (rRule != null) rRule.exportToFile(output);	//Repeat rule
-		if (isLocationAvailable()) output.println(String.format("LOCATION:%s", getLocation()));	//Location
-		if (alarm != null) alarm.exportToFile(output);	//Alarm
-		output.println("END:VEVENT");	//Event end sign
+		output.print(exportICSFormat());
 	}
 	
 	//Purpose: Describe the course in the overview format
 	//			Used in calendar overview
 	public String overviewString() {
 		//System.out.println(" Is Course |       Summary       |          Start Time          |           End Time          |         Location        | Alarm | Repeat ");
-		return String.format("     N     | %19s | %s | %s | %23s |   %c   | %s ", getSummary(19), dtStart.getTime().toString(), dtEnd.getTime().toString(), isLocationAvailable()?getLocation(23): "          null         ", alarm != null? 'Y': 'N', rRule != null? rRule.getFrequencyString(): "  N");
+		return String.format("     N     | %19s | %s | %s | %23s |   %c   | %s ", getSummary(19), getDtStart().getTime().toString(), getDtEnd().getTime().toString(), isLocationAvailable()?getLocation(23): "          null         ", alarm != null? 'Y': 'N', rRule != null? rRule.getFrequencyString(): "  N");
 	}
 	
 }
@@ -0,0 +1,121 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+//Finder of the free time shared by calendars (e.g. for the sessions with many
+//students)
+//The busy time of each calendar is a bitset of 5-minute slots (BusyGrid) cached by
+//the calendar until it is changed, so the grids are only combined by word-wide
+//OR operations and the free windows are found by scanning the words
+//The times are rounded to the slots (the windows are inside the time range)
+public class FreeSlotFinder {
+
+	// A free window shared by the calendars
+	public static class FreeWindow implements Comparable<FreeWindow> {
+
+		private final long start;
+		private final long end;
+		private final TimeZone zone;
+
+		public FreeWindow(long start, long end, TimeZone zone) {
+			this.start = start;
+			this.end = end;
+			this.zone = zone;
+		}
+
+		public long getStartMillis() {
+			return start;
+		}
+
+		public long getEndMillis() {
+			return end;
+		}
+
+		public long getLength() {
+			return end - start;
+		}
+
+		// The GregorianCalendar is a new copy in the time zone of the query
+		public GregorianCalendar getStart() {
+			return ICSDateTime.toGregorianCalendar(start, zone);
+		}
+
+		public GregorianCalendar getEnd() {
+			return ICSDateTime.toGregorianCalendar(end, zone);
+		}
+
+		// Rank of the windows: longer first, then earlier first
+		@Override
+		public int compareTo(FreeWindow window) {
+			int temp = Long.compare(window.getLength(), getLength());
+			return temp != 0 ? temp : Long.compare(start, window.start);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s - %s (%d min)", getStart().getTime(), getEnd().getTime(), getLength() / 60000);
+		}
+	}
+
+	// Purpose: Find the common free windows of the calendars in the time range
+	// [from, to) (epoch milliseconds) not shorter than minLength (milliseconds)
+	// return the windows ranked by length (longer first, then earlier first)
+	public static List<FreeWindow> findFreeWindows(List<ICalendar> calendars, long from, long to, long minLength) {
+		return findFreeWindows(calendars, from, to, minLength, ICSDateTime.UTC, 0, 24 * 60);
+	}
+
+	// Purpose: Find the common free windows of the calendars in the time range
+	// [from, to) (epoch milliseconds) not shorter than minLength (milliseconds)
+	// and inside the daily hours
+	// dayStart, dayEnd: the daily hours in minutes of day in the time zone (e.g.
+	// 8 * 60 and 18 * 60 for 08:00 - 18:00)
+	// return the windows ranked by length (longer first, then earlier first)
+	public static List<FreeWindow> findFreeWindows(List<ICalendar> calendars, long from, long to, long minLength,
+			TimeZone zone, int dayStart, int dayEnd) {
+		// The slots inside the range
+		long first = Math.floorDiv(from + BusyGrid.SLOT - 1, BusyGrid.SLOT) * BusyGrid.SLOT;
+		int size = (int) Math.max(Math.floorDiv(to, BusyGrid.SLOT) - first / BusyGrid.SLOT, 0);
+		// Combine the busy slots of the calendars and the slots out of the daily
+		// hours
+		BusyGrid busy = new BusyGrid(first, size);
+		for (ICalendar iCal : calendars) {
+			busy.or(iCal.getBusyGrid(first, size));
+		}
+		if (dayStart > 0 || dayEnd < 24 * 60)
+			markNight(busy, zone, dayStart * 60000L, dayEnd * 60000L);
+		// Collect the runs of the free slots
+		ArrayList<FreeWindow> windows = new ArrayList<>();
+		int slot = busy.nextFree(0);
+		while (slot < size) {
+			int end = busy.nextBusy(slot);
+			if ((end - slot) * BusyGrid.SLOT >= minLength)
+				windows.add(new FreeWindow(first + slot * BusyGrid.SLOT, first + end * BusyGrid.SLOT, zone));
+			slot = busy.nextFree(end);
+		}
+		Collections.sort(windows);
+		return windows;
+	}
+
+	// Mark the slots not entirely inside the daily hours [dayStart, dayEnd)
+	// (milliseconds of the local day) busy
+	private static void markNight(BusyGrid busy, TimeZone zone, long dayStart, long dayEnd) {
+		int nightStart = -1;
+		for (int i = 0; i < busy.size(); i++) {
+			long start = busy.getFrom() + i * BusyGrid.SLOT;
+			long local = Math.floorMod(start + zone.getOffset(start), ICSDateTime.MILLISECONDS_PER_DAY);
+			boolean night = local < dayStart || local + BusyGrid.SLOT > dayEnd;
+			if (night && nightStart < 0)
+				nightStart = i;
+			else if (!night && nightStart >= 0) {
+				busy.markSlots(nightStart, i);
+				nightStart = -1;
+			}
+		}
+		if (nightStart >= 0)
+			busy.markSlots(nightStart, busy.size());
+	}
+}
@@ -0,0 +1,319 @@
+package iCalendarEditor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+//Codec of the ics date-time values (yyyyMMdd'T'HHmmss['Z'] and yyyyMMdd)
+//Decodes the values straight from the bytes/chars into epoch milliseconds (UTC)
+//and encodes them back into caller's buffers without creating intermediate
+//objects
+//An instance caches the recently decoded values and the date of the last
+//encoded day (not thread-safe, use one instance per thread, e.g. formatter())
+public class ICSDateTime {
+
+	public static final long MILLISECONDS_PER_SECOND = 1000;
+	public static final long MILLISECONDS_PER_DAY = 1000 * 60 * 60 * 24;
+	// Time zone of the ics times ending with Z (shared, never modified)
+	public static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	// Length of an encoded UTC time (yyyyMMdd'T'HHmmss'Z')
+	public static final int FORMAT_LENGTH = 16;
+	// Length of the date part of an encoded time (yyyyMMdd'T')
+	private static final int PREFIX_LENGTH = 9;
+
+	// Size of the cache of the decoded values (must be power of 2)
+	private static final int CACHE_SIZE = 64;
+
+	// Instance of each thread used by the static formatting methods (Event)
+	private static final ThreadLocal<ICSDateTime> FORMATTERS = ThreadLocal.withInitial(ICSDateTime::new);
+
+	// Cache of the recently decoded values: packed digits -> epoch milliseconds
+	// Packed digits is yyyyMMddHHmmss as a number with the lowest bit marking a
+	// date-only value
+	private final long[] cacheKeys = new long[CACHE_SIZE];
+	private final long[] cacheValues = new long[CACHE_SIZE];
+
+	// The last encoded time: its day is kept with the date part, so the times of
+	// the same day only write the time part
+	private final byte[] encoded = new byte[FORMAT_LENGTH];
+	private long encodedDay = Long.MIN_VALUE;
+
+	public ICSDateTime() {
+		// Mark all slots as empty (packed digits are never negative)
+		Arrays.fill(cacheKeys, -1);
+	}
+
+	// Purpose: Decode a date-time value in bytes with the cache
+	// used by the file reader where the same timestamps appear repeatedly
+	public long decode(byte[] bytes, int offset, int length) {
+		long key = pack(bytes, offset, length);
+		int slot = (int) (key ^ (key >>> 17)) & (CACHE_SIZE - 1);
+		if (cacheKeys[slot] == key)
+			return cacheValues[slot];
+		long value = unpack(key);
+		cacheKeys[slot] = key;
+		cacheValues[slot] = value;
+		return value;
+	}
+
+	// Purpose: Decode a date-time value in bytes to epoch milliseconds
+	// bytes example: 20210222T151500Z / 20210222
+	public static long parse(byte[] bytes, int offset, int length) {
+		return unpack(pack(bytes, offset, length));
+	}
+
+	// Purpose: Decode a date-time value in chars to epoch milliseconds
+	// str example: 20210222T151500Z / 20210222
+	public static long parse(CharSequence str, int offset, int length) {
+		if (length < 8)
+			throw new IllegalArgumentException("Illegal date-time value: " + str);
+		long date = digits(str, offset, 8);
+		if (length >= 15 && str.charAt(offset + 8) == 'T')
+			return unpack((date * 1000000 + digits(str, offset + 9, 6)) << 1);
+		return unpack(date * 1000000 << 1 | 1);
+	}
+
+	// Pack the digits of the value to a long (yyyyMMddHHmmss << 1 | dateOnly)
+	private static long pack(byte[] bytes, int offset, int length) {
+		if (length < 8)
+			throw new IllegalArgumentException("Illegal date-time value at " + offset);
+		long date = digits(bytes, offset, 8);
+		if (length >= 15 && bytes[offset + 8] == 'T')
+			return (date * 1000000 + digits(bytes, offset + 9, 6)) << 1;
+		return date * 1000000 << 1 | 1;
+	}
+
+	private static long digits(byte[] bytes, int offset, int count) {
+		long value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new IllegalArgumentException("Illegal digit in date-time value at " + i);
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static long digits(CharSequence str, int offset, int count) {
+		long value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int digit = str.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw new IllegalArgumentException("Illegal digit in date-time value: " + str);
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	// Change the packed digits to epoch milliseconds
+	private static long unpack(long key) {
+		long fields = key >>> 1;
+		int second = (int) (fields % 100);
+		int minute = (int) (fields / 100 % 100);
+		int hour = (int) (fields / 10000 % 100);
+		int date = (int) (fields / 1000000 % 100);
+		int month = (int) (fields / 100000000 % 100);
+		int year = (int) (fields / 10000000000L);
+		return epochDay(year, month, date) * MILLISECONDS_PER_DAY
+				+ ((hour * 60L + minute) * 60 + second) * MILLISECONDS_PER_SECOND;
+	}
+
+	// Purpose: Get the number of days from 1970-01-01 to the date (proleptic
+	// Gregorian calendar, month is 1-12)
+	public static long epochDay(int year, int month, int date) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + date - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	// Purpose: Get the date of the number of days from 1970-01-01
+	// return the date packed as yyyyMMdd (e.g. 20210222)
+	public static int civilDate(long epochDay) {
+		long z = epochDay + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int date = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+		return year * 10000 + month * 100 + date;
+	}
+
+	// Purpose: Get the day of week of the number of days from 1970-01-01
+	// return 1 (Monday) to 7 (Sunday)
+	public static int dayOfWeek(long epochDay) {
+		return Math.floorMod(epochDay + 3, 7) + 1;
+	}
+
+	// Purpose: Get the number of days in the month (month is 1-12)
+	public static int daysInMonth(int year, int month) {
+		if (month == 2)
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	// Purpose: Decode a duration value in bytes to milliseconds
+	// bytes example: PT1H45M / -PT30M / P1W / P1DT12H
+	public static long parseDuration(byte[] bytes, int offset, int length) {
+		int i = offset;
+		int end = offset + length;
+		boolean negative = false;
+		if (i < end && (bytes[i] == '+' || bytes[i] == '-'))
+			negative = bytes[i++] == '-';
+		if (i >= end || bytes[i++] != 'P')
+			throw new IllegalArgumentException("Illegal duration value at " + offset);
+		long seconds = 0;
+		long number = 0;
+		boolean digitRead = false;
+		for (; i < end; i++) {
+			byte b = bytes[i];
+			if (b >= '0' && b <= '9') {
+				number = number * 10 + (b - '0');
+				digitRead = true;
+				continue;
+			}
+			if (b == 'T')
+				continue;
+			if (!digitRead)
+				throw new IllegalArgumentException("Illegal duration value at " + i);
+			switch (b) {
+			case 'W':
+				seconds += number * 7 * 24 * 60 * 60;
+				break;
+			case 'D':
+				seconds += number * 24 * 60 * 60;
+				break;
+			case 'H':
+				seconds += number * 60 * 60;
+				break;
+			case 'M':
+				seconds += number * 60;
+				break;
+			case 'S':
+				seconds += number;
+				break;
+			default:
+				throw new IllegalArgumentException("Illegal duration value at " + i);
+			}
+			number = 0;
+			digitRead = false;
+		}
+		return (negative ? -seconds : seconds) * MILLISECONDS_PER_SECOND;
+	}
+
+	// Purpose: Get the instance of the current thread (used to encode times where
+	// no instance is kept)
+	public static ICSDateTime formatter() {
+		return FORMATTERS.get();
+	}
+
+	// Purpose: Encode the UTC time (epoch milliseconds) into the array from the
+	// offset as yyyyMMdd'T'HHmmss'Z' (16 bytes, years 0000 - 9999)
+	// return the offset after the time
+	public int format(long time, byte[] dest, int offset) {
+		encode(time);
+		System.arraycopy(encoded, 0, dest, offset, FORMAT_LENGTH);
+		return offset + FORMAT_LENGTH;
+	}
+
+	// Purpose: Encode the UTC time (epoch milliseconds) into the buffer at its
+	// position (16 bytes, years 0000 - 9999)
+	public void format(long time, ByteBuffer dest) {
+		encode(time);
+		dest.put(encoded);
+	}
+
+	// Purpose: Encode the UTC time (epoch milliseconds) into the array from the
+	// offset (16 chars, years 0000 - 9999)
+	// return the offset after the time
+	public int format(long time, char[] dest, int offset) {
+		encode(time);
+		for (int i = 0; i < FORMAT_LENGTH; i++) {
+			dest[offset + i] = (char) encoded[i];
+		}
+		return offset + FORMAT_LENGTH;
+	}
+
+	// Purpose: Append the UTC time (epoch milliseconds) to the builder
+	// (the years out of 0000 - 9999 are written with their own number of digits)
+	public StringBuilder append(StringBuilder dest, long time) {
+		if (!canFormat(time))
+			return appendLong(dest, time);
+		encode(time);
+		for (int i = 0; i < FORMAT_LENGTH; i++) {
+			dest.append((char) encoded[i]);
+		}
+		return dest;
+	}
+
+	// Purpose: Check whether the time can be encoded in the fixed-width format
+	// (years 0000 - 9999)
+	public boolean canFormat(long time) {
+		long day = Math.floorDiv(time, MILLISECONDS_PER_DAY);
+		return day == encodedDay || isEncodable(civilDate(day));
+	}
+
+	// Encode the time into the buffer (the date part is written only when the day
+	// changes)
+	private void encode(long time) {
+		long day = Math.floorDiv(time, MILLISECONDS_PER_DAY);
+		if (day != encodedDay) {
+			int date = civilDate(day);
+			if (!isEncodable(date))
+				throw new IllegalArgumentException("The year of the time is out of 0000 - 9999: " + time);
+			writeDigits(encoded, 0, date, 8);
+			encoded[8] = 'T';
+			encoded[FORMAT_LENGTH - 1] = 'Z';
+			encodedDay = day;
+		}
+		int seconds = (int) ((time - day * MILLISECONDS_PER_DAY) / MILLISECONDS_PER_SECOND);
+		writeDigits(encoded, PREFIX_LENGTH, seconds / 3600 * 10000 + seconds / 60 % 60 * 100 + seconds % 60, 6);
+	}
+
+	// Check whether the date (yyyyMMdd) has 8 digits
+	private static boolean isEncodable(int date) {
+		return date >= 0 && date <= 99991231;
+	}
+
+	// Write the number into the array with the number of digits
+	private static void writeDigits(byte[] dest, int offset, int number, int count) {
+		for (int i = offset + count - 1; i >= offset; i--) {
+			dest[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+	}
+
+	// Append the time with a year out of 0000 - 9999
+	private static StringBuilder appendLong(StringBuilder dest, long time) {
+		long day = Math.floorDiv(time, MILLISECONDS_PER_DAY);
+		int date = civilDate(day);
+		int seconds = (int) ((time - day * MILLISECONDS_PER_DAY) / MILLISECONDS_PER_SECOND);
+		dest.append(date / 10000);
+		appendTwoDigits(dest, date / 100 % 100);
+		appendTwoDigits(dest, date % 100);
+		appendTwoDigits(dest.append('T'), seconds / 3600);
+		appendTwoDigits(dest, seconds / 60 % 60);
+		appendTwoDigits(dest, seconds % 60);
+		return dest.append('Z');
+	}
+
+	private static void appendTwoDigits(StringBuilder dest, int num) {
+		dest.append((char) ('0' + num / 10)).append((char) ('0' + num % 10));
+	}
+
+	// Purpose: Build the GregorianCalendar of a epoch milliseconds value in the
+	// time zone
+	// Used where the time is still represented by a GregorianCalendar
+	public static GregorianCalendar toGregorianCalendar(long millis, TimeZone zone) {
+		GregorianCalendar temp = new GregorianCalendar(zone);
+		temp.setTimeInMillis(millis);
+		return temp;
+	}
+}
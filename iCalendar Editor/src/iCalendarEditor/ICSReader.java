@@ -0,0 +1,1024 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Reader of the ics file
+//Maps the file into memory and scans the UTF-8 bytes for line breaks directly
+//instead of decoding every line through a Scanner
+//Each content line is unfolded and divided into name, parameters and value in one pass
+//Large files can be read in parallel by dividing the file at the events
+public class ICSReader implements AutoCloseable {
+
+	// Size of the mapped window (files larger than it are mapped window by window)
+	private static final int WINDOW_SIZE = 1 << 28;
+
+	// Ids of the property names used to divide different type of content lines
+	public static final int UNKNOWN = 0;
+	public static final int BEGIN = 1;
+	public static final int END = 2;
+	public static final int PRODID = 3;
+	public static final int VERSION = 4;
+	public static final int SUMMARY = 5;
+	public static final int DTSTART = 6;
+	public static final int DTEND = 7;
+	public static final int DURATION = 8;
+	public static final int LOCATION = 9;
+	public static final int DESCRIPTION = 10;
+	public static final int RRULE = 11;
+	public static final int EXDATE = 12;
+	public static final int TRIGGER = 13;
+	private static final String[] PROPERTY_NAMES = { null, "BEGIN", "END", "PRODID", "VERSION", "SUMMARY",
+			"DTSTART", "DTEND", "DURATION", "LOCATION", "DESCRIPTION", "RRULE", "EXDATE", "TRIGGER" };
+
+	// Precomputed hash table of the property names: hash -> property id
+	// (open addressing, the size is large enough to keep the probes short)
+	private static final int TABLE_SIZE = 64;
+	private static final byte[][] TABLE_NAMES = new byte[TABLE_SIZE][];
+	private static final int[] TABLE_IDS = new int[TABLE_SIZE];
+	static {
+		for (int id = 1; id < PROPERTY_NAMES.length; id++) {
+			byte[] name = bytesOf(PROPERTY_NAMES[id]);
+			int slot = hash(name, 0, name.length) & (TABLE_SIZE - 1);
+			while (TABLE_NAMES[slot] != null)
+				slot = (slot + 1) & (TABLE_SIZE - 1);
+			TABLE_NAMES[slot] = name;
+			TABLE_IDS[slot] = id;
+		}
+	}
+
+	// Component names and parameter names
+	private static final byte[] VCALENDAR = bytesOf("VCALENDAR");
+	private static final byte[] VEVENT = bytesOf("VEVENT");
+	private static final byte[] VALARM = bytesOf("VALARM");
+	private static final byte[] BEGIN_VEVENT = bytesOf("BEGIN:VEVENT");
+	private static final byte[] END_VEVENT = bytesOf("END:VEVENT");
+	private static final byte[] TZID = bytesOf("TZID");
+	private static final byte[] VALUE = bytesOf("VALUE");
+
+	// Parts of the repeat rule and their values
+	private static final byte[] FREQ = bytesOf("FREQ");
+	private static final byte[] UNTIL = bytesOf("UNTIL");
+	private static final byte[] COUNT = bytesOf("COUNT");
+	private static final byte[] INTERVAL = bytesOf("INTERVAL");
+	private static final byte[] BYDAY = bytesOf("BYDAY");
+	private static final byte[] BYMONTH = bytesOf("BYMONTH");
+	private static final byte[] BYMONTHDAY = bytesOf("BYMONTHDAY");
+	private static final byte[] WKST = bytesOf("WKST");
+	private static final byte[][] FREQUENCY_NAMES = { bytesOf("DAILY"), bytesOf("WEEKLY"), bytesOf("MONTHLY"),
+			bytesOf("YEARLY") };
+	private static final byte[][] DAY_NAMES = { bytesOf("MO"), bytesOf("TU"), bytesOf("WE"), bytesOf("TH"),
+			bytesOf("FR"), bytesOf("SA"), bytesOf("SU") };
+
+	// Mark of a time not read yet
+	private static final long NO_TIME = Event.NO_TIME;
+
+	// Files smaller than it are always read on one thread
+	private static final long PARALLEL_THRESHOLD = 1 << 20;
+	// Least number of events decoded by a parallel task
+	private static final int MIN_EVENTS_PER_TASK = 256;
+	// Number of tasks for each thread in a batch
+	private static final int TASKS_PER_THREAD = 4;
+	// Number of events decoded in advance for each thread (limits the memory used)
+	private static final int EVENTS_PER_BATCH = TASKS_PER_THREAD * MIN_EVENTS_PER_TASK * 4;
+
+	private final FileChannel channel;
+	private final boolean ownsChannel;
+	// End of the part of the file read by the reader
+	private final long rangeEnd;
+	private MappedByteBuffer window;
+	private long windowStart;
+	// The current content line (unfolded, without the line break) and its length
+	private byte[] line = new byte[256];
+	private int lineLength;
+	private int lineNumber;
+	// Line number and file position of the first line of the current content line
+	private int contentLineNumber;
+	private long contentLineStart;
+	// Result of the tokenization: end of name, start of value, property id
+	private int nameEnd;
+	private int valueStart;
+	private int propertyId;
+	// Decoder of the times in the file
+	private final ICSDateTime dateTime = new ICSDateTime();
+	// Time zones used by the TZID parameters
+	private final HashMap<String, TimeZone> timeZones = new HashMap<>();
+	// Time zone of the GregorianCalendar objects created by the reader
+	private final TimeZone zone;
+	// Date of the BYMONTHDAY part of the last repeat rule read (0 when not set),
+	// checked with DTSTART at the end of the event
+	private int ruleMonthDay;
+
+	public ICSReader(File path) throws IOException {
+		this(path, ICSDateTime.UTC);
+	}
+
+	// zone: time zone of the GregorianCalendar objects created by the reader
+	// (no process-wide default time zone is used, so files can be read concurrently)
+	public ICSReader(File path, TimeZone zone) throws IOException {
+		this(FileChannel.open(path.toPath(), StandardOpenOption.READ), true, 0, -1, 0, zone);
+		// Skip the UTF-8 byte order mark
+		if (rangeEnd >= 3 && (window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB
+				&& (window.get(2) & 0xFF) == 0xBF)
+			window.position(3);
+	}
+
+	// Reader of the part of the file between start and end (-1 for the end of file)
+	// lineNumber: number of the lines before start
+	private ICSReader(FileChannel channel, boolean ownsChannel, long start, long end, int lineNumber,
+			TimeZone zone) throws IOException {
+		this.channel = channel;
+		this.zone = zone;
+		this.ownsChannel = ownsChannel;
+		this.rangeEnd = end == -1 ? channel.size() : end;
+		this.lineNumber = lineNumber;
+		map(start);
+	}
+
+	// Map the part of the file starting at position
+	private void map(long position) throws IOException {
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, rangeEnd - position));
+	}
+
+	// Get the file position of the next byte to read
+	private long position() {
+		return windowStart + window.position();
+	}
+
+	// Move to a position of the file
+	// lineNumber: number of the lines before position
+	private void seek(long position, int lineNumber) throws IOException {
+		if (position >= windowStart && position <= windowStart + window.limit())
+			window.position((int) (position - windowStart));
+		else
+			map(position);
+		this.lineNumber = lineNumber;
+	}
+
+	// Purpose: Move to the next content line of the file
+	// unfolds the lines beginning with a space or a tab and tokenizes the result
+	// return false when the end of file is reached
+	public boolean nextContentLine() throws IOException {
+		contentLineStart = position();
+		if (!nextLine(false))
+			return false;
+		contentLineNumber = lineNumber;
+		while (isContinuationNext())
+			nextLine(true);
+		tokenize();
+		return true;
+	}
+
+	// Purpose: Move to the next physical line of the file
+	// accepts both CRLF and LF line breaks
+	// append: attach the line (without its leading white space) to the current one
+	private boolean nextLine(boolean append) throws IOException {
+		while (true) {
+			int start = window.position();
+			int limit = window.limit();
+			for (int i = start; i < limit; i++) {
+				if (window.get(i) == '\n') {
+					copyLine(start, i, append);
+					window.position(i + 1);
+					return true;
+				}
+			}
+			// No line break in the rest of the window
+			if (windowStart + limit >= rangeEnd) {
+				// End of the file -> the last line has no line break
+				if (start == limit)
+					return false;
+				copyLine(start, limit, append);
+				window.position(limit);
+				return true;
+			}
+			// The line crosses the end of the window -> map again from the line start
+			if (start == 0)
+				throw new IOException("Line " + (lineNumber + 1) + " is too long to read");
+			map(windowStart + start);
+		}
+	}
+
+	// Check whether the next physical line is the continuation of the current one
+	private boolean isContinuationNext() throws IOException {
+		int position = window.position();
+		if (position == window.limit()) {
+			if (windowStart + position >= rangeEnd)
+				return false;
+			map(windowStart + position);
+			position = 0;
+		}
+		byte first = window.get(position);
+		return first == ' ' || first == '\t';
+	}
+
+	// Copy the bytes between start and end (without CR) to the line buffer
+	private void copyLine(int start, int end, boolean append) {
+		if (end > start && window.get(end - 1) == '\r')
+			end--;
+		if (append)
+			start++;
+		int offset = append ? lineLength : 0;
+		int length = end - start;
+		if (offset + length > line.length) {
+			byte[] temp = new byte[Math.max(offset + length, line.length * 2)];
+			System.arraycopy(line, 0, temp, 0, offset);
+			line = temp;
+		}
+		window.get(start, line, offset, length);
+		lineLength = offset + length;
+		lineNumber++;
+	}
+
+	// Divide the content line into name, parameters and value
+	// line example: DTSTART;TZID="America/New_York":20210222T083000
+	private void tokenize() {
+		nameEnd = -1;
+		valueStart = -1;
+		boolean quoted = false;
+		for (int i = 0; i < lineLength; i++) {
+			byte b = line[i];
+			if (b == '"')
+				quoted = !quoted;
+			else if (!quoted) {
+				if (b == ';' && nameEnd == -1)
+					nameEnd = i;
+				else if (b == ':') {
+					if (nameEnd == -1)
+						nameEnd = i;
+					valueStart = i + 1;
+					break;
+				}
+			}
+		}
+		propertyId = valueStart == -1 ? UNKNOWN : lookup(line, 0, nameEnd);
+	}
+
+	// Find the id of a property name in the precomputed table
+	private static int lookup(byte[] bytes, int offset, int length) {
+		int slot = hash(bytes, offset, length) & (TABLE_SIZE - 1);
+		while (TABLE_NAMES[slot] != null) {
+			if (equalsIgnoreCase(TABLE_NAMES[slot], bytes, offset, length))
+				return TABLE_IDS[slot];
+			slot = (slot + 1) & (TABLE_SIZE - 1);
+		}
+		return UNKNOWN;
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int h = 0;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + upperCase(bytes[i]);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int upperCase(byte b) {
+		return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+	}
+
+	// Check whether the bytes in the range are the name (ASCII letters ignoring case)
+	private static boolean equalsIgnoreCase(byte[] name, byte[] bytes, int offset, int length) {
+		if (name.length != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (name[i] != upperCase(bytes[offset + i]))
+				return false;
+		}
+		return true;
+	}
+
+	public int getLineNumber() {
+		return contentLineNumber;
+	}
+
+	public boolean isLineEmpty() {
+		return lineLength == 0;
+	}
+
+	// Check whether the current content line can be divided into name and value
+	public boolean isLineLegal() {
+		return valueStart != -1 && nameEnd > 0;
+	}
+
+	public int getPropertyId() {
+		return propertyId;
+	}
+
+	// Check whether the value of the current content line is the name (ignoring
+	// case)
+	public boolean valueEquals(byte[] name) {
+		return equalsIgnoreCase(name, line, valueStart, lineLength - valueStart);
+	}
+
+	// Decode the value of the current content line
+	public String getValue() {
+		return new String(line, valueStart, lineLength - valueStart, StandardCharsets.UTF_8);
+	}
+
+	// Decode the value of the current content line as a TEXT value
+	// removes the escapes (\\ \; \, \n)
+	public String getTextValue() {
+		int length = 0;
+		for (int i = valueStart; i < lineLength; i++, length++) {
+			byte b = line[i];
+			if (b == '\\' && i + 1 < lineLength) {
+				b = line[++i];
+				if (b == 'n' || b == 'N')
+					b = '\n';
+			}
+			// Unescaped bytes are moved to the front in place (the value is only read once)
+			line[valueStart + length] = b;
+		}
+		return new String(line, valueStart, length, StandardCharsets.UTF_8);
+	}
+
+	// Get a parameter of the current content line (null when not exist)
+	// parameters example: ;TZID="America/New_York";VALUE=DATE-TIME
+	public String getParameter(byte[] name) {
+		int i = nameEnd;
+		while (i < valueStart - 1) {
+			// line[i] is ';' -> read parameter name
+			int nameStart = i + 1;
+			int equals = nameStart;
+			while (equals < valueStart - 1 && line[equals] != '=')
+				equals++;
+			// Find the end of the parameter value
+			int end = equals + 1;
+			boolean quoted = false;
+			while (end < valueStart - 1 && (quoted || line[end] != ';')) {
+				if (line[end] == '"')
+					quoted = !quoted;
+				end++;
+			}
+			if (equalsIgnoreCase(name, line, nameStart, equals - nameStart)) {
+				int start = equals + 1;
+				int stop = end;
+				if (stop - start >= 2 && line[start] == '"' && line[stop - 1] == '"') {
+					start++;
+					stop--;
+				}
+				return new String(line, start, Math.max(stop - start, 0), StandardCharsets.UTF_8);
+			}
+			i = end;
+		}
+		return null;
+	}
+
+	// Check whether the value of the current content line is a date without time
+	public boolean isDateValue() {
+		return lineLength - valueStart == 8 || "DATE".equalsIgnoreCase(getParameter(VALUE));
+	}
+
+	// Decode the time value of the current content line to epoch milliseconds
+	// A value with a TZID parameter is the local time of that time zone, other
+	// values are taken as UTC
+	public long getTimeValue() {
+		return decodeTime(valueStart, lineLength, getValueZone());
+	}
+
+	// Decode the time list value of the current content line (e.g. EXDATE) to
+	// epoch milliseconds
+	// value example: 20210301T133000Z,20210308T133000Z
+	public long[] getTimeValues() {
+		TimeZone zone = getValueZone();
+		int count = 1;
+		for (int i = valueStart; i < lineLength; i++) {
+			if (line[i] == ',')
+				count++;
+		}
+		long[] times = new long[count];
+		int start = valueStart;
+		for (int i = 0; i < count; i++) {
+			int end = start;
+			while (end < lineLength && line[end] != ',')
+				end++;
+			times[i] = decodeTime(start, end, zone);
+			start = end + 1;
+		}
+		return times;
+	}
+
+	// Get the time zone of the time values of the current content line given by
+	// the TZID parameter (null when the values are UTC)
+	private TimeZone getValueZone() {
+		if (nameEnd == valueStart - 1)
+			return null;
+		String tzid = getParameter(TZID);
+		if (tzid == null)
+			return null;
+		TimeZone zone = timeZones.get(tzid);
+		if (zone == null) {
+			zone = findZone(tzid);
+			// Unknown time zone (e.g. only defined by a VTIMEZONE component) -> the
+			// times cannot be decoded (guessing a zone would move the events)
+			if (zone == null)
+				throw new IllegalArgumentException("Unknown time zone \"" + tzid + "\"");
+			timeZones.put(tzid, zone);
+		}
+		return zone;
+	}
+
+	// Find the time zone of a TZID: a Java (IANA) time zone id, the same id with a
+	// leading "/" (globally unique id) or a Windows time zone name (Outlook)
+	// return null when the TZID is none of them
+	private static TimeZone findZone(String tzid) {
+		String id = tzid.startsWith("/") ? tzid.substring(1) : tzid;
+		TimeZone zone = TimeZone.getTimeZone(id);
+		if (zone.getID().equals(id))
+			return zone;
+		return WindowsZones.find(id);
+	}
+
+	// Decode a time of the current content line between start and end
+	// zone: time zone of the local time (null or a time ending with Z -> UTC)
+	private long decodeTime(int start, int end, TimeZone zone) {
+		long time = dateTime.decode(line, start, end - start);
+		if (zone == null || line[end - 1] == 'Z')
+			return time;
+		return time - zone.getOffset(time - zone.getOffset(time));
+	}
+
+	// Decode the repeat rule value of the current content line
+	// value example: FREQ=WEEKLY;UNTIL=20210628T160000Z;INTERVAL=1 /
+	// FREQ=WEEKLY;COUNT=10;BYDAY=MO,WE / FREQ=MONTHLY;BYDAY=-1FR /
+	// FREQ=YEARLY;BYMONTH=11;BYDAY=4TH
+	// FREQ, UNTIL, COUNT, INTERVAL, BYDAY (with the ordinals for MONTHLY and YEARLY)
+	// and one BYMONTH of a YEARLY rule are read, BYMONTHDAY is only accepted on the
+	// date of DTSTART and WKST only when the weeks are the same as weeks beginning
+	// with Monday, the extension parts (X-) are ignored
+	// throws IllegalArgumentException for the other parts and frequencies (e.g.
+	// HOURLY, BYSETPOS) so that a rule is never expanded to other occurrences
+	private RepeatRule getRepeatRuleValue() {
+		int frequency = -1;
+		long until = NO_TIME;
+		int count = 0;
+		int interval = 1;
+		int byDay = 0;
+		int[] nthDays = null;
+		int byMonth = 0;
+		int weekStart = 0;
+		ruleMonthDay = 0;
+		int i = valueStart;
+		while (i < lineLength) {
+			// Divide the part into name and value
+			int equals = i;
+			while (equals < lineLength && line[equals] != '=' && line[equals] != ';')
+				equals++;
+			int end = equals;
+			while (end < lineLength && line[end] != ';')
+				end++;
+			if (equals == end)
+				throw new IllegalArgumentException("Illegal repeat rule part at " + i);
+			int start = equals + 1;
+			if (equalsIgnoreCase(FREQ, line, i, equals - i)) {
+				for (int f = 0; f < FREQUENCY_NAMES.length; f++) {
+					if (equalsIgnoreCase(FREQUENCY_NAMES[f], line, start, end - start))
+						frequency = f;
+				}
+				if (frequency == -1)
+					throw new IllegalArgumentException("Unsupported repeat frequency at " + start);
+			} else if (equalsIgnoreCase(UNTIL, line, i, equals - i))
+				until = decodeTime(start, end, null);
+			else if (equalsIgnoreCase(COUNT, line, i, equals - i))
+				count = parseNumber(start, end);
+			else if (equalsIgnoreCase(INTERVAL, line, i, equals - i))
+				interval = parseNumber(start, end);
+			else if (equalsIgnoreCase(BYDAY, line, i, equals - i)) {
+				// Each day may begin with a ordinal in the month (e.g. 1MO, -1FR)
+				int dayStart = start;
+				while (dayStart < end) {
+					int dayEnd = dayStart;
+					while (dayEnd < end && line[dayEnd] != ',')
+						dayEnd++;
+					int day = dayEnd - dayStart < 2 ? -1 : indexOf(DAY_NAMES, dayEnd - 2, dayEnd);
+					if (day == -1)
+						throw new IllegalArgumentException("Illegal day in repeat rule at " + dayStart);
+					if (dayEnd - dayStart == 2)
+						byDay |= 1 << day;
+					else {
+						int ordinalStart = line[dayStart] == '+' || line[dayStart] == '-' ? dayStart + 1 : dayStart;
+						int ordinal = parseNumber(ordinalStart, dayEnd - 2);
+						if (ordinal < 1 || ordinal > 5)
+							throw new IllegalArgumentException("Unsupported ordinal of a day at " + dayStart);
+						if (nthDays == null)
+							nthDays = new int[7];
+						nthDays[day] |= RepeatRule.ordinalBit(line[dayStart] == '-' ? -ordinal : ordinal);
+					}
+					dayStart = dayEnd + 1;
+				}
+			} else if (equalsIgnoreCase(BYMONTH, line, i, equals - i)) {
+				byMonth = parseNumber(start, end);
+				if (byMonth < 1 || byMonth > 12)
+					throw new IllegalArgumentException("Unsupported month of repeat rule at " + start);
+			} else if (equalsIgnoreCase(BYMONTHDAY, line, i, equals - i)) {
+				ruleMonthDay = parseNumber(start, end);
+				if (ruleMonthDay < 1 || ruleMonthDay > 31)
+					throw new IllegalArgumentException("Unsupported date of repeat rule at " + start);
+			} else if (equalsIgnoreCase(WKST, line, i, equals - i)) {
+				weekStart = end - start == 2 ? indexOf(DAY_NAMES, start, end) : -1;
+				if (weekStart == -1)
+					throw new IllegalArgumentException("Illegal day in repeat rule at " + start);
+			} else if (equals - i < 2 || (line[i] != 'X' && line[i] != 'x') || line[i + 1] != '-')
+				throw new IllegalArgumentException("Unsupported repeat rule part at " + i);
+			i = end + 1;
+		}
+		if (frequency == -1)
+			throw new IllegalArgumentException("Repeat rule without frequency");
+		boolean monthly = frequency == RepeatRule.MONTHLY || frequency == RepeatRule.YEARLY;
+		if (nthDays != null && !monthly)
+			throw new IllegalArgumentException("Ordinals of days in a daily or weekly repeat rule");
+		if (byMonth != 0 && frequency != RepeatRule.YEARLY)
+			throw new IllegalArgumentException("BYMONTH in a repeat rule which is not yearly");
+		if (frequency == RepeatRule.YEARLY && (byDay != 0 || nthDays != null) && byMonth == 0)
+			throw new IllegalArgumentException("Days of a yearly repeat rule without BYMONTH");
+		if (ruleMonthDay != 0 && (!monthly || byDay != 0 || nthDays != null))
+			throw new IllegalArgumentException("Unsupported BYMONTHDAY of repeat rule");
+		// The days of the weeks beginning with other days than Monday are different
+		// when the rule skips weeks
+		if (weekStart > 0 && frequency == RepeatRule.WEEKLY && interval > 1 && Integer.bitCount(byDay) > 1)
+			throw new IllegalArgumentException("Unsupported start of the week of repeat rule");
+		RepeatRule rRule = new RepeatRule(frequency, until, zone, interval);
+		rRule.setCount(count);
+		rRule.setByDay(byDay);
+		rRule.setNthDays(nthDays);
+		rRule.setByMonth(byMonth);
+		return rRule;
+	}
+
+	// Get the index of the name equal to the current content line between start
+	// and end (ignoring case)
+	// return -1 when no name is equal
+	private int indexOf(byte[][] names, int start, int end) {
+		for (int n = 0; n < names.length; n++) {
+			if (equalsIgnoreCase(names[n], line, start, end - start))
+				return n;
+		}
+		return -1;
+	}
+
+	// Decode a positive integer of the current content line between start and end
+	private int parseNumber(int start, int end) {
+		if (start == end || end - start > 9)
+			throw new IllegalArgumentException("Illegal number at " + start);
+		int number = 0;
+		for (int i = start; i < end; i++) {
+			int digit = line[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new IllegalArgumentException("Illegal number at " + start);
+			number = number * 10 + digit;
+		}
+		return number;
+	}
+
+	// Decode the duration value of the current content line to milliseconds
+	public long getDurationValue() {
+		return ICSDateTime.parseDuration(line, valueStart, lineLength - valueStart);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (ownsChannel)
+			channel.close();
+	}
+
+	private static byte[] bytesOf(String str) {
+		return str.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	// Purpose: Read a file and push its content to the handler
+	public static void read(File path, CalendarHandler handler) throws IOException {
+		read(path, 1, handler);
+	}
+
+	// Purpose: Read a file and push its content to the handler
+	// parallelism > 1: the events of a large file are decoded batch by batch on
+	// that number of threads and then pushed to the handler in the original order
+	public static void read(File path, int parallelism, CalendarHandler handler) throws IOException {
+		read(path, parallelism, ICSDateTime.UTC, handler);
+	}
+
+	// Purpose: Read a file and push its content to the handler
+	// zone: time zone of the GregorianCalendar objects of the events
+	// Used in ICalendar.readFromFile()
+	public static void read(File path, int parallelism, TimeZone zone, CalendarHandler handler)
+			throws IOException {
+		try (ICSReader input = new ICSReader(path, zone)) {
+			if (parallelism <= 1 || input.rangeEnd < PARALLEL_THRESHOLD) {
+				input.readCalendar(handler, null, null);
+				return;
+			}
+			// Find the events -> read the file and decode the events in parallel
+			EventIndex events = new ICSReader(input.channel, false, input.position(), -1, 0, zone)
+					.scanEvents();
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				input.readCalendar(handler, events, pool);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	// Purpose: Read the calendar and push the content to the handler
+	// events, pool: the positions of the events and the threads to decode them
+	// in advance (null -> decode the events while reading)
+	private void readCalendar(CalendarHandler handler, EventIndex events, ForkJoinPool pool) throws IOException {
+		// Check the basic format of the file
+		if (!nextContentLine() || propertyId != BEGIN || !valueEquals(VCALENDAR))
+			throw new IOException("The file has incorrect format at Line 1");
+		handler.onCalendarStart();
+		// Declare the variables for reading
+		boolean endFlag = false;
+		int skipDepth = 0; // Depth of the unsupported component being skipped
+		int eventIndex = 0; // Index of the next event decoded in advance
+		Lecture[] batch = new Lecture[0]; // The events decoded in advance
+		int batchStart = 0; // Index of the first event in the batch
+		// Reading content line by content line
+		while (nextContentLine()) {
+			int lineCount = contentLineNumber; // For error notification
+			if (isLineEmpty())
+				continue;
+			// Check if the "END:VCALENDAR" is the end of the file
+			if (endFlag || !isLineLegal())
+				throw new IOException("The file has incorrect format at Line " + lineCount);
+			// Skip the components not supported (e.g. VTIMEZONE, VTODO)
+			if (skipDepth > 0) {
+				if (propertyId == BEGIN) {
+					skipDepth++;
+					// The event decoded in advance is inside the skipped component -> ignore it
+					if (events != null && eventIndex < events.size && events.starts[eventIndex] == contentLineStart)
+						eventIndex++;
+				} else if (propertyId == END)
+					skipDepth--;
+				continue;
+			}
+			// Divide different type of content line
+			switch (propertyId) {
+			case BEGIN:
+				if (valueEquals(VEVENT)) {
+					// Beginning of a event(lecture) -> read the lecture
+					// line example: BEGIN:VEVENT
+					if (events == null)
+						handler.onEvent(readEvent());
+					else {
+						// Decoded in advance -> skip to the end of the event
+						if (eventIndex >= events.size || events.starts[eventIndex] != contentLineStart)
+							throw new IOException("The file has incorrect format at Line " + lineCount);
+						seek(events.ends[eventIndex], events.endLines[eventIndex]);
+						// The batch is used up -> decode the next batch
+						if (eventIndex >= batchStart + batch.length) {
+							batchStart = eventIndex;
+							batch = readEvents(events, eventIndex,
+									Math.min(events.size, eventIndex + pool.getParallelism() * EVENTS_PER_BATCH), pool);
+						}
+						handler.onEvent(batch[eventIndex++ - batchStart]);
+					}
+				} else if (valueEquals(VCALENDAR))
+					throw new IOException("The file has incorrect format at Line " + lineCount);
+				else
+					skipDepth = 1;
+				break;
+			case END:
+				// End of the calendar -> stop reading
+				if (!valueEquals(VCALENDAR))
+					throw new IOException("The file has incorrect format at Line " + lineCount);
+				endFlag = true;
+				handler.onCalendarEnd();
+				break;
+			case VERSION:
+				// line example: VERSION:2.0
+				if (!getValue().equals("2.0"))
+					throw new IOException("The file has incorrect format at Line " + lineCount);
+				break;
+			case SUMMARY:
+			case DTSTART:
+			case DTEND:
+			case DURATION:
+			case LOCATION:
+			case DESCRIPTION:
+			case RRULE:
+			case EXDATE:
+				// Properties of the event outside the event
+				throw new IOException("The file has incorrect format at Line " + lineCount);
+			default:
+				// Features of the calendar but have no meaning for the program
+				// line example: PRODID:-//KEANWISE//EN / CALSCALE:GREGORIAN / X-WR-CALNAME:Courses
+				break;
+			}
+		}
+	}
+
+	// Purpose: Read the content lines of a event after its BEGIN:VEVENT line
+	// return the lecture when END:VEVENT is read
+	private Lecture readEvent() throws IOException {
+		// Declare the variables for reading
+		int skipDepth = 0; // Depth of the unsupported component being skipped
+		boolean inAlarm = false; // Whether the lines are in a VALARM component
+		long alarmTrigger = NO_TIME;
+		String alarmDescription = null;
+		Alarm alarm = null;
+		String summary = null;
+		long dtStart = NO_TIME;
+		long dtEnd = NO_TIME;
+		long duration = NO_TIME;
+		boolean allDay = false;
+		TimeZone startZone = null; // Time zone of a DTSTART with TZID
+		RepeatRule rRule = null;
+		long[] exceptions = null;
+		String description = null;
+		String location = null;
+		String building = null;
+		String room = null;
+		// Reading content line by content line
+		while (nextContentLine()) {
+			int lineCount = contentLineNumber; // For error notification
+			if (isLineEmpty())
+				continue;
+			if (!isLineLegal())
+				throw new IOException("The file has incorrect format at Line " + lineCount);
+			// Skip the components not supported (e.g. VALARM)
+			if (skipDepth > 0) {
+				if (propertyId == BEGIN)
+					skipDepth++;
+				else if (propertyId == END)
+					skipDepth--;
+				continue;
+			}
+			// Divide different type of content line
+			try {
+				// The alarm of the event -> only the trigger and the description are read
+				// lines example: BEGIN:VALARM / ACTION:DISPLAY / TRIGGER;RELATED=START:-PT15M
+				// / DESCRIPTION:CPS*2231*W01 COMPUTER ORGAN & / END:VALARM
+				if (inAlarm) {
+					if (propertyId == BEGIN)
+						skipDepth = 1;
+					else if (propertyId == TRIGGER) {
+						// Absolute triggers (VALUE=DATE-TIME) are not supported
+						if (getParameter(VALUE) == null)
+							alarmTrigger = getDurationValue();
+					} else if (propertyId == DESCRIPTION)
+						alarmDescription = getTextValue();
+					else if (propertyId == END) {
+						inAlarm = false;
+						// Only the first alarm is kept (a event has one alarm)
+						if (alarm == null && alarmTrigger != NO_TIME)
+							alarm = new Alarm((int) (-alarmTrigger / (60 * ICSDateTime.MILLISECONDS_PER_SECOND)),
+									alarmDescription);
+					}
+					continue;
+				}
+				switch (propertyId) {
+				case BEGIN:
+					if (valueEquals(VCALENDAR))
+						throw new IOException("The file has incorrect format at Line " + lineCount);
+					if (valueEquals(VALARM)) {
+						inAlarm = true;
+						alarmTrigger = NO_TIME;
+						alarmDescription = null;
+					} else
+						skipDepth = 1;
+					break;
+				case END:
+					// End of a event(lecture) -> save lecture
+					if (!valueEquals(VEVENT))
+						throw new IOException("The file has incorrect format at Line " + lineCount);
+					// DTEND is optional -> use the duration or the start time (a day for dates)
+					if (dtEnd == NO_TIME && dtStart != NO_TIME)
+						dtEnd = dtStart
+								+ (duration != NO_TIME ? duration : allDay ? ICSDateTime.MILLISECONDS_PER_DAY : 0);
+					if (rRule != null && dtStart != NO_TIME) {
+						// A DTSTART with TZID -> the rule repeats in the local time of the zone
+						// (keeps the local time across the DST changes)
+						if (startZone != null)
+							rRule.setLocalZone(startZone.toZoneId());
+						// BYMONTHDAY is only supported on the date of DTSTART (the same as no
+						// BYMONTHDAY)
+						if (ruleMonthDay != 0 && ruleMonthDay != ICSDateTime.civilDate(
+								Math.floorDiv(rRule.localTimeOf(dtStart), ICSDateTime.MILLISECONDS_PER_DAY)) % 100)
+							throw new IllegalArgumentException("Unsupported BYMONTHDAY of repeat rule");
+						// COUNT -> the end of the last occurrence is used as the end of the rule
+						// (computed from the count, a rule with UNTIL as well keeps UNTIL)
+						if (rRule.getCount() > 0 && rRule.getEndDtMillis() == NO_TIME)
+							rRule.setEndDtMillis(OccurrenceIterator.lastOccurrence(rRule, dtStart) + dtEnd - dtStart);
+						if (exceptions != null) {
+							for (int i = 0; i < exceptions.length; i++)
+								exceptions[i] = OccurrenceIterator.exceptionStart(rRule, dtStart, dtEnd - dtStart,
+										exceptions[i]);
+							for (long exception : exceptions)
+								rRule.addException(exception);
+						}
+					}
+					Lecture lecture = new Lecture(summary, dtStart, dtEnd, zone, rRule, description, location,
+							building, room);
+					lecture.setAlarm(alarm);
+					return lecture;
+				case VERSION:
+					throw new IOException("The file has incorrect format at Line " + lineCount);
+				case DTSTART:
+					// The start time of the lecture -> set dtStart
+					// line example: DTSTART:20210222T133000Z /
+					// DTSTART;TZID=America/New_York:20210222T083000
+					dtStart = getTimeValue();
+					allDay = isDateValue();
+					startZone = allDay || line[lineLength - 1] == 'Z' ? null : getValueZone();
+					break;
+				case DTEND:
+					// The end time of the lecture -> set dtEnd
+					// line example: DTEND:20210222T151500Z
+					dtEnd = getTimeValue();
+					break;
+				case DURATION:
+					// The length of the lecture (used when there is no DTEND)
+					// line example: DURATION:PT1H45M
+					duration = getDurationValue();
+					break;
+				case LOCATION:
+					// The location of the classroom -> set location, building and room
+					// line example: LOCATION:Location: W\, Building:GEH\, Room:C504
+					String[] temp = readLocations(getValue());
+					location = temp[0];
+					building = temp[1];
+					room = temp[2];
+					break;
+				case SUMMARY:
+					// The summary of the lecture(course) -> set summary
+					// line example: SUMMARY:CPS*2231*W01 COMPUTER ORGAN &
+					summary = getTextValue();
+					break;
+				case DESCRIPTION:
+					// The description of the lecture -> set description
+					description = getTextValue();
+					break;
+				case RRULE:
+					// The repeat rule of the event -> set rRule
+					// line example: RRULE:FREQ=WEEKLY;UNTIL=20210628T160000Z;INTERVAL=1
+					rRule = getRepeatRuleValue();
+					break;
+				case EXDATE:
+					// The exceptions of the repeat rule (may be before the RRULE line or in
+					// several lines)
+					// line example: EXDATE:20210301T133000Z,20210308T133000Z
+					long[] times = getTimeValues();
+					if (exceptions == null)
+						exceptions = times;
+					else {
+						int length = exceptions.length;
+						exceptions = Arrays.copyOf(exceptions, length + times.length);
+						System.arraycopy(times, 0, exceptions, length, times.length);
+					}
+					break;
+				default:
+					// Features of the event but have no meaning for a lecture
+					// line example: CATEGORIES:CS / DTSTAMP:20210515T151343 / SEQUENCE:0
+					// / UID:af6a34ce-09dd-4f17-9427-49606f00b912
+					break;
+				}
+			} catch (IllegalArgumentException e) {
+				// Illegal time or duration value, unknown time zone
+				throw new IOException("The file has incorrect format at Line " + lineCount + ": " + e.getMessage(), e);
+			}
+		}
+		// The event is not closed
+		throw new IOException("The file has incorrect format at Line " + lineNumber);
+	}
+
+	// Purpose: Find the positions of the events (BEGIN:VEVENT ... END:VEVENT) in
+	// the file
+	// Used in parallel reading to divide the file
+	private EventIndex scanEvents() throws IOException {
+		EventIndex events = new EventIndex();
+		int depth = 0;
+		long start = 0;
+		int startLine = 0;
+		while (true) {
+			long lineStart = position();
+			if (!nextLine(false))
+				break;
+			if (equalsIgnoreCase(BEGIN_VEVENT, line, 0, lineLength)) {
+				if (depth++ == 0) {
+					start = lineStart;
+					startLine = lineNumber;
+				}
+			} else if (depth > 0 && equalsIgnoreCase(END_VEVENT, line, 0, lineLength)) {
+				if (--depth == 0)
+					events.add(start, startLine, position(), lineNumber);
+			}
+		}
+		return events;
+	}
+
+	// Purpose: Decode the events from index from (inclusive) to index to
+	// (exclusive) in parallel
+	// the events are divided into tasks of continuous events run on the pool
+	private Lecture[] readEvents(EventIndex events, int from, int to, ForkJoinPool pool) throws IOException {
+		Lecture[] lectures = new Lecture[to - from];
+		int taskNumber = Math.max(1, Math.min(pool.getParallelism() * TASKS_PER_THREAD,
+				(to - from + MIN_EVENTS_PER_TASK - 1) / MIN_EVENTS_PER_TASK));
+		// Each task returns the error of its part (null when succeeded)
+		ArrayList<Callable<IOException>> tasks = new ArrayList<>();
+		for (int i = 0; i < taskNumber; i++) {
+			int taskFrom = from + (int) ((long) (to - from) * i / taskNumber);
+			int taskTo = from + (int) ((long) (to - from) * (i + 1) / taskNumber);
+			tasks.add(() -> {
+				try {
+					readEvents(events, taskFrom, taskTo, lectures, from);
+					return null;
+				} catch (IOException e) {
+					return e;
+				}
+			});
+		}
+		try {
+			// Report the error of the earliest part of the file
+			for (Future<IOException> task : pool.invokeAll(tasks)) {
+				IOException error = task.get();
+				if (error != null)
+					throw error;
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Reading is interrupted", e);
+		}
+		return lectures;
+	}
+
+	// Decode the events from index from (inclusive) to index to (exclusive)
+	// lectures: the result array beginning with the event at offset
+	private void readEvents(EventIndex events, int from, int to, Lecture[] lectures, int offset)
+			throws IOException {
+		if (from == to)
+			return;
+		ICSReader input = new ICSReader(channel, false, events.starts[from], events.ends[to - 1],
+				events.startLines[from] - 1, zone);
+		for (int i = from; i < to; i++) {
+			// Skip the BEGIN:VEVENT line
+			input.seek(events.starts[i], events.startLines[i] - 1);
+			input.nextContentLine();
+			lectures[i - offset] = input.readEvent();
+		}
+	}
+
+	// Positions of the events in the file
+	// starts, startLines: position and line number of the BEGIN:VEVENT lines
+	// ends, endLines: position after and line number of the END:VEVENT lines
+	private static class EventIndex {
+		private long[] starts = new long[64];
+		private long[] ends = new long[64];
+		private int[] startLines = new int[64];
+		private int[] endLines = new int[64];
+		private int size;
+
+		private void add(long start, int startLine, long end, int endLine) {
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				startLines = Arrays.copyOf(startLines, size * 2);
+				endLines = Arrays.copyOf(endLines, size * 2);
+			}
+			starts[size] = start;
+			startLines[size] = startLine;
+			ends[size] = end;
+			endLines[size] = endLine;
+			size++;
+		}
+	}
+
+	// Work for the file reader to get the location, building and room
+	// str example: Location: W\, Building:GEH\, Room:C504
+	private static String[] readLocations(String str) {
+		String[] temp = new String[3];
+		int startIndex = 0;
+		for (int i = 0; i < 3; i++) {
+			startIndex = str.indexOf(':', startIndex) + 1;
+			if (startIndex != 0) {
+				// The parts end with "\," (KEANWISE) or "," (exported by the program)
+				int endIndex = str.indexOf(',', startIndex);
+				if (endIndex == -1)
+					endIndex = str.length();
+				if (endIndex > startIndex && str.charAt(endIndex - 1) == '\\')
+					endIndex--;
+				temp[i] = str.substring(startIndex, endIndex);
+			} else
+				break;
+		}
+		return temp;
+	}
+}
@@ -0,0 +1,312 @@
+package iCalendarEditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+//Streaming writer of the ics format (RFC 5545)
+//The content lines are encoded in UTF-8 into an array of the size of a reusable
+//(direct) byte buffer, which is copied in one piece into the buffer and written to
+//the channel whenever it is full
+//The lines end with CRLF and are folded at 75 octets (CRLF + space, never inside
+//a UTF-8 character), the TEXT values are escaped (\\ \; \, \n)
+//Used by the export of ICalendar, Course, Event, RepeatRule and Alarm
+public class ICSWriter {
+
+	// Longest line in octets (without the line break)
+	public static final int LINE_LIMIT = 75;
+	// Size of the buffer of the file export
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	// A content written by the writer
+	@FunctionalInterface
+	public interface Writable {
+		void writeICS(ICSWriter writer) throws IOException;
+	}
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	// Encoded bytes not written to the buffer yet
+	private final byte[] bytes;
+	private int position;
+	private final ICSDateTime formatter = new ICSDateTime();
+	// Builder of the times out of the range of the fixed-width format
+	private final StringBuilder scratch = new StringBuilder(24);
+	// Octets in the current line
+	private int lineOctets;
+	// DTSTAMP of the events (epoch milliseconds)
+	private long stamp = System.currentTimeMillis();
+
+	// The writer uses a direct buffer of BUFFER_SIZE
+	public ICSWriter(WritableByteChannel channel) {
+		this(channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+	}
+
+	// buffer: the buffer the bytes are written to the channel from (may be reused
+	// by the next writer after this one is flushed), at least 64 bytes
+	public ICSWriter(WritableByteChannel channel, ByteBuffer buffer) {
+		if (buffer.capacity() < 64)
+			throw new IllegalArgumentException("The buffer is too small: " + buffer.capacity());
+		this.channel = channel;
+		this.buffer = buffer;
+		this.bytes = new byte[buffer.capacity()];
+	}
+
+	// Purpose: Write the content in the ics format to a string (the lines end with
+	// CRLF)
+	public static String toString(Writable content) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ICSWriter writer = new ICSWriter(Channels.newChannel(output), ByteBuffer.allocate(BUFFER_SIZE));
+		try {
+			content.writeICS(writer);
+			writer.flush();
+		} catch (IOException e) {
+			// Not thrown by the memory output
+			throw new UncheckedIOException(e);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public long getStamp() {
+		return stamp;
+	}
+
+	// The time written as DTSTAMP of all the events (the time the writer was
+	// created by default)
+	public void setStamp(long stamp) {
+		this.stamp = stamp;
+	}
+
+	// Purpose: Begin a content line with the name (and parameters) of the property
+	// example: property("TRIGGER;RELATED=START") -> TRIGGER;RELATED=START:
+	public ICSWriter property(String name) throws IOException {
+		value(name);
+		return value(':');
+	}
+
+	// Purpose: Write the value without escaping (e.g. a RRULE value)
+	public ICSWriter value(CharSequence value) throws IOException {
+		int length = value.length();
+		int i = 0;
+		// Copy the ASCII chars without the checks when the value fits in the line
+		if (lineOctets + length <= LINE_LIMIT && position + length <= bytes.length) {
+			for (char c; i < length && (c = value.charAt(i)) < 0x80; i++) {
+				bytes[position + i] = (byte) c;
+			}
+			position += i;
+			lineOctets += i;
+		}
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80)
+				putASCII(c);
+			else
+				i = putChar(value, i);
+		}
+		return this;
+	}
+
+	public ICSWriter value(char c) throws IOException {
+		if (c < 0x80)
+			putASCII(c);
+		else
+			putChar(String.valueOf(c), 0);
+		return this;
+	}
+
+	public ICSWriter value(long number) throws IOException {
+		if (number >= 0 && number < 10) {
+			putASCII((char) ('0' + number));
+			return this;
+		}
+		scratch.setLength(0);
+		return value(scratch.append(number));
+	}
+
+	// Purpose: Write the TEXT value with the escapes (\\ \; \, \n, CR dropped)
+	// null -> empty value (e.g. an event or alarm read without the property)
+	public ICSWriter text(CharSequence text) throws IOException {
+		if (text == null)
+			return this;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '\\':
+			case ';':
+			case ',':
+				putASCII('\\');
+				putASCII(c);
+				break;
+			case '\n':
+				putASCII('\\');
+				putASCII('n');
+				break;
+			case '\r':
+				break;
+			default:
+				if (c < 0x80)
+					putASCII(c);
+				else
+					i = putChar(text, i);
+			}
+		}
+		return this;
+	}
+
+	// Purpose: Write the UTC time (epoch milliseconds) as yyyyMMdd'T'HHmmss'Z'
+	public ICSWriter time(long time) throws IOException {
+		if (lineOctets + ICSDateTime.FORMAT_LENGTH <= LINE_LIMIT && formatter.canFormat(time)) {
+			ensure(ICSDateTime.FORMAT_LENGTH);
+			position = formatter.format(time, bytes, position);
+			lineOctets += ICSDateTime.FORMAT_LENGTH;
+			return this;
+		}
+		// Folded inside the time or a year out of 0000 - 9999
+		scratch.setLength(0);
+		return value(formatter.append(scratch, time));
+	}
+
+	// Purpose: Write the local time (local milliseconds since 1970-01-01T00:00) as
+	// yyyyMMdd'T'HHmmss (the time zone is given by the TZID parameter)
+	public ICSWriter localTime(long local) throws IOException {
+		if (lineOctets + ICSDateTime.FORMAT_LENGTH <= LINE_LIMIT && formatter.canFormat(local)) {
+			ensure(ICSDateTime.FORMAT_LENGTH);
+			// The same as a UTC time without the Z
+			position = formatter.format(local, bytes, position) - 1;
+			lineOctets += ICSDateTime.FORMAT_LENGTH - 1;
+			return this;
+		}
+		scratch.setLength(0);
+		formatter.append(scratch, local);
+		scratch.setLength(scratch.length() - 1);
+		return value(scratch);
+	}
+
+	// Purpose: End the content line (CRLF)
+	public ICSWriter endLine() throws IOException {
+		ensure(2);
+		bytes[position++] = '\r';
+		bytes[position++] = '\n';
+		lineOctets = 0;
+		return this;
+	}
+
+	// Purpose: Write a whole content line without escaping
+	// example: line("BEGIN", "VEVENT") -> BEGIN:VEVENT
+	public ICSWriter line(String name, CharSequence value) throws IOException {
+		return property(name).value(value).endLine();
+	}
+
+	// Purpose: Write a whole content line with a TEXT value
+	public ICSWriter textLine(String name, CharSequence text) throws IOException {
+		return property(name).text(text).endLine();
+	}
+
+	// Purpose: Write a whole content line with a UTC time
+	public ICSWriter timeLine(String name, long time) throws IOException {
+		return property(name).time(time).endLine();
+	}
+
+	// Purpose: Write the encoded bytes to the channel through the buffer
+	public void flush() throws IOException {
+		buffer.clear();
+		buffer.put(bytes, 0, position).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		position = 0;
+	}
+
+	// Purpose: Write the buffers (e.g. contents encoded by other writers) to the
+	// channel after the bytes encoded by this writer
+	// the buffers must hold whole content lines, they are written by gathering
+	// writes when the channel supports them (e.g. a FileChannel)
+	public void write(ByteBuffer[] buffers) throws IOException {
+		flush();
+		if (channel instanceof GatheringByteChannel) {
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			int offset = 0;
+			while (offset < buffers.length) {
+				gathering.write(buffers, offset, buffers.length - offset);
+				while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+					offset++;
+				}
+			}
+			return;
+		}
+		for (ByteBuffer part : buffers) {
+			while (part.hasRemaining()) {
+				channel.write(part);
+			}
+		}
+	}
+
+	// Write an ASCII char (folding the line when it is full)
+	private void putASCII(char c) throws IOException {
+		if (lineOctets == LINE_LIMIT)
+			fold();
+		ensure(1);
+		bytes[position++] = (byte) c;
+		lineOctets++;
+	}
+
+	// Write the non-ASCII char at the index in UTF-8 (a surrogate pair is written
+	// as one character, a single surrogate as '?')
+	// return the index of the last char written
+	private int putChar(CharSequence value, int index) throws IOException {
+		char c = value.charAt(index);
+		int codePoint = c;
+		int octets;
+		if (c < 0x800)
+			octets = 2;
+		else if (!Character.isSurrogate(c))
+			octets = 3;
+		else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+				&& Character.isLowSurrogate(value.charAt(index + 1))) {
+			codePoint = Character.toCodePoint(c, value.charAt(++index));
+			octets = 4;
+		} else {
+			putASCII('?');
+			return index;
+		}
+		if (lineOctets + octets > LINE_LIMIT)
+			fold();
+		ensure(octets);
+		switch (octets) {
+		case 2:
+			bytes[position++] = (byte) (0xC0 | codePoint >> 6);
+			break;
+		case 3:
+			bytes[position++] = (byte) (0xE0 | codePoint >> 12);
+			bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+			break;
+		default:
+			bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+			bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+			bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+		}
+		bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+		lineOctets += octets;
+		return index;
+	}
+
+	// Fold the line: CRLF and a space
+	private void fold() throws IOException {
+		ensure(3);
+		bytes[position++] = '\r';
+		bytes[position++] = '\n';
+		bytes[position++] = ' ';
+		lineOctets = 1;
+	}
+
+	// Make room for the number of bytes in the buffer
+	private void ensure(int count) throws IOException {
+		if (bytes.length - position < count)
+			flush();
+	}
+}
@@ -1,15 +1,21 @@
 package iCalendarEditor;
 
 import java.util.Scanner; //Import .ics file
-import java.util.TimeZone; //Transformation of time zone base & display/output time zone
+import java.time.ZoneId; //Transformation of time zone base
 import java.io.File; //import, export
-import java.io.FileNotFoundException;
-import java.io.PrintWriter; // Export .ics file
+import java.io.IOException;
+import java.nio.channels.FileChannel; // Export .ics file
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList; // QuickUsable interface
 import java.util.GregorianCalendar; // Represent the start time and end time of the events
+import java.util.List;
 
 public class ICalEditor {
 
+	// Cache of the imported files (skips reading and optimizing a file imported before)
+	// created by the first import (the cache directory is not made before it is used)
+	private static ParseCache parseCache;
+
 	public static void main(String[] args) {
 		Scanner input = new Scanner(System.in);
 		welcomePrint();
@@ -50,15 +56,23 @@ public class ICalEditor {
 			} else if (!path.isFile()) {
 				System.out.println("\nThe path does not point to a file. Please check and enter a available path.\n");
 				return getCalendar(input);
+			} else if (path.getName().endsWith(CalendarSnapshot.EXTENSION)) {
+				// Calendar saved by the program (already optimized and in the local time zone)
+				try {
+					return CalendarSnapshot.read(path);
+				} catch (IOException e) {
+					System.out.println("\n" + e.getMessage() + ". Please check and enter a available path.\n");
+					return getCalendar(input);
+				}
 			} else if (!path.getName().substring(path.getName().lastIndexOf('.')).equals(".ics")) {
 				System.out.println("\nThe file is not a .ics file. Please check and enter a available path.\n");
 				return getCalendar(input);
 			} else {
-				ICalendar iCal = ICalendar.readFromFile(path);
-				if (!TimeZone.getDefault().useDaylightTime())
-					iCal.fixDST();
-				iCal.optimizeCourses();
-				iCal.changeTimeZoneBase(TimeZone.getTimeZone("America/New_York"), TimeZone.getDefault());
+				// Read, rebase from the American eastern time to the local time zone (by the
+				// DST rules of both zones) and optimize the courses (or load the result of the
+				// last import)
+				ICalendar iCal = parseCache().readFromFile(path, Runtime.getRuntime().availableProcessors(),
+						ZoneId.of("America/New_York"), ZoneId.systemDefault());
 				return iCal;
 			}
 		} else if (choice == 'B') { // Start with a empty calendar
@@ -70,6 +84,25 @@ public class ICalEditor {
 		}
 	}
 
+	private static ParseCache parseCache() {
+		if (parseCache == null)
+			parseCache = new ParseCache();
+		return parseCache;
+	}
+
+	// Purpose: Export the calendar to the file
+	// a path ending with the snapshot extension -> calendar snapshot (keeps the
+	// courses), otherwise -> ics file
+	private static void exportCalendar(ICalendar iCal, File path) throws IOException {
+		if (path.getName().endsWith(CalendarSnapshot.EXTENSION))
+			CalendarSnapshot.write(iCal, path);
+		else
+			try (FileChannel output = FileChannel.open(path.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				iCal.writeICS(output, Runtime.getRuntime().availableProcessors());
+			}
+	}
+
 	private static String pathInputFix(String str) {
 		// Remove spaces
 		str = str.trim();
@@ -315,7 +348,7 @@ public class ICalEditor {
 	private static boolean mainMenu(ICalendar iCal, Scanner input) {
 		calendarOverviewPrint(iCal);
 		printMainMenu();
-		char[] legalOperations = { '1', '2', '3', '4', '5', '6', '7', 'C', 'P', '@', '$' };
+		char[] legalOperations = { '1', '2', '3', '4', '5', '6', '7', '8', 'C', 'P', '@', '$' };
 		switch (getOperation(legalOperations, input)) {
 		// Open a calendar content (course/normal event)
 		case '1':
@@ -326,17 +359,20 @@ public class ICalEditor {
 			if (num1 == -1)
 				break;
 			// The content is course -> course menu
+			// (a content shared with other calendars is copied before changed)
 			else if (iCal.getContent().get(num1) instanceof Course) {
+				Course course = (Course) iCal.getEditable(num1);
 				boolean flag = true;
 				while (flag) {
-					flag = courseMenu((Course) iCal.getContent().get(num1), input);
+					flag = courseMenu(course, input);
 				}
 			}
 			// The content is normal event -> event menu
 			else {
+				NormalEvent normalEvent = (NormalEvent) iCal.getEditable(num1);
 				boolean flag = true;
 				while (flag) {
-					flag = eventMenu((NormalEvent) iCal.getContent().get(num1), input);
+					flag = eventMenu(normalEvent, input);
 				}
 			}
 			break;
@@ -378,7 +414,7 @@ public class ICalEditor {
 				break;
 			// Remove content
 			else
-				iCal.getContent().remove(num5);
+				iCal.remove(num5);
 			break;
 		// Rename the calendar
 		case '6':
@@ -399,9 +435,9 @@ public class ICalEditor {
 				char choice = Character.toUpperCase(input.next().charAt(0));
 				input.nextLine();
 				if (choice == 'Y') {
-					try (PrintWriter output = new PrintWriter(iCal.getPath())) {
-						iCal.exportToFile(output);
-					} catch (FileNotFoundException e) {
+					try {
+						exportCalendar(iCal, iCal.getPath());
+					} catch (IOException e) {
 						System.out.println("An error occurred when exporting.");
 						break;
 					}
@@ -420,9 +456,9 @@ public class ICalEditor {
 				System.out.print("The file already exists. Are you sure to cover it? (Y/N)");
 				char choice = Character.toUpperCase(input.next().charAt(0));
 				if (choice == 'Y') {
-					try (PrintWriter output = new PrintWriter(path)) {
-						iCal.exportToFile(output);
-					} catch (FileNotFoundException e) {
+					try {
+						exportCalendar(iCal, path);
+					} catch (IOException e) {
 						System.out.println("An error occurred when exporting.");
 						break;
 					}
@@ -433,24 +469,30 @@ public class ICalEditor {
 					break;
 				}
 			} else if (!path.getName().contains(".")
-					|| !path.getName().substring(path.getName().lastIndexOf('.')).equals(".ics")) {
+					|| !path.getName().substring(path.getName().lastIndexOf('.')).equals(".ics")
+							&& !path.getName().endsWith(CalendarSnapshot.EXTENSION)) {
 				System.out.println(
-						"\nThe target is not a .ics file. Please check and enter a available path. Back to the main menu.\n");
+						"\nThe target is not a .ics or " + CalendarSnapshot.EXTENSION
+								+ " file. Please check and enter a available path. Back to the main menu.\n");
 				break;
 			} else if (path.isDirectory()) {
 				System.out.println(
 						"\nThe path points to a directory. Please check and enter a available path. Back to the main menu.\n");
 				break;
 			} else {
-				try (PrintWriter output = new PrintWriter(path)) {
-					iCal.exportToFile(output);
-				} catch (FileNotFoundException e) {
+				try {
+					exportCalendar(iCal, path);
+				} catch (IOException e) {
 					System.out.println("An error occurred when exporting.");
 					break;
 				}
 				System.out.println("Successfully exported calendar to " + path.getAbsolutePath() + " !");
 			}
 			break;
+		// Merge the weekly series of courses by day of week
+		case '8':
+			System.out.printf("\n%d VEVENT(s) saved in the calendar %s.\n", iCal.mergeWeekdays(), iCal.getName());
+			break;
 		// Copy a content (multiple-calendar)
 		case 'C':
 			System.out.println("\nPLease enter the number of the calendar content (course/normal event) to copy.");
@@ -472,7 +514,7 @@ public class ICalEditor {
 				break;
 			}
 			// Paste the content in clipboard
-			iCal.add((CalContent) CalContent.CLIPBOARD[0].clone());
+			iCal.add(CalContent.CLIPBOARD[0].sharedCopy());
 			System.out.println("Pasting completed.");
 			break;
 		// Go to multiple-calendar menu
@@ -500,6 +542,7 @@ public class ICalEditor {
 		System.out.println("5. Remove content from calendar");
 		System.out.println("6. Rename the calendar");
 		System.out.println("7. Export the calendar to file");
+		System.out.println("8. Merge the weekly series of courses by day of week");
 		System.out.println("C. Copy a content (multiple-calendar)");
 		System.out.println("P: Paste (multiple-calendar)");
 		System.out.println("@. Go to multiple-calendar menu");
@@ -523,10 +566,12 @@ public class ICalEditor {
 			if (num1 == -1)
 				break;
 			// Open the lecture -> event menu
+			// (a lecture shared with other courses is copied before changed)
 			else {
+				Lecture lecture = course.getEditableLecture(num1);
 				boolean flag = true;
 				while (flag) {
-					flag = eventMenu((Lecture) course.getLectures().get(num1), input);
+					flag = eventMenu(lecture, input);
 				}
 			}
 			break;
@@ -550,7 +595,7 @@ public class ICalEditor {
 				break;
 			// Remove lecture
 			else
-				course.getLectures().remove(num3);
+				course.remove(num3);
 			break;
 		// Reset summary of the course
 		case '4':
@@ -798,7 +843,7 @@ public class ICalEditor {
 	private static boolean MultipleCalMenu(ArrayList<ICalendar> calList, Scanner input) {
 		calListPrint(calList);
 		printMultiCalendarMenu();
-		char[] legalOperations = { '1', '2', '3', '4', '$' };
+		char[] legalOperations = { '1', '2', '3', '4', '5', '6', '$' };
 		switch (getOperation(legalOperations, input)) {
 		// Open a calendar
 		case '1':
@@ -861,6 +906,25 @@ public class ICalEditor {
 			// Add the product to calendar list
 			calList.add(ICalendar.mergenceOf(calList.get(num41), calList.get(num42)));
 			break;
+		// Merge the weekly series of each calendar
+		case '5':
+			System.out.println();
+			for (ICalendar iCal : calList) {
+				System.out.printf("%s: %d VEVENT(s) saved\n", iCal.getName(), iCal.mergeWeekdays());
+			}
+			break;
+		// Find the conflicting events of each calendar (checked in parallel)
+		case '6':
+			System.out.println();
+			List<List<ConflictDetector.Conflict>> conflicts = ConflictDetector.findConflictsEach(calList,
+					Runtime.getRuntime().availableProcessors());
+			for (int i = 0; i < calList.size(); i++) {
+				System.out.printf("%s: %d conflict(s)\n", calList.get(i).getName(), conflicts.get(i).size());
+				for (ConflictDetector.Conflict conflict : conflicts.get(i)) {
+					System.out.println("    " + conflict);
+				}
+			}
+			break;
 		// Exit
 		case '$':
 			return false;
@@ -900,6 +964,8 @@ public class ICalEditor {
 		System.out.println("2. Add new calendar");
 		System.out.println("3. Remove calendar from the list");
 		System.out.println("4. Merge two calendars");
+		System.out.println("5. Merge the weekly series of courses by day of week (all calendars)");
+		System.out.println("6. Find the conflicting events (each calendar)");
 		System.out.println("$. Exit");
 	}
 
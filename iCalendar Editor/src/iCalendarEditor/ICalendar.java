@@ -1,17 +1,62 @@
 package iCalendarEditor;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
-
-public class ICalendar implements Cloneable {
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+public class ICalendar implements Cloneable, ICSWriter.Writable {
+
+	// Calendars with fewer events are always exported on one thread
+	private static final int PARALLEL_EXPORT_THRESHOLD = 4096;
+	// Least and most number of events encoded by a parallel export task
+	private static final int MIN_EVENTS_PER_EXPORT_TASK = 256;
+	private static final int MAX_EVENTS_PER_EXPORT_TASK = 4096;
+	// Number of export tasks encoded in advance for each thread
+	private static final int EXPORT_TASKS_PER_THREAD = 4;
 
 	private String name;
 	private File path;
 	private ArrayList<CalContent> content;
+	// Index of the courses by summary: summary -> the first course with the summary
+	// in content (used to find the course of a lecture without scanning content)
+	private HashMap<String, Course> courseIndex;
+	// Number of the calendars sharing content and courseIndex (the clones of the
+	// calendar, copy-on-write: they are copied before a calendar changes them
+	// unless it is the last one using them), null when not shared
+	private AtomicInteger contentUsers;
+	// Time index of the events (built by the first time query, null when not
+	// built or dropped by the changes of all the events)
+	private TimeIndex timeIndex;
+	// Contents changed since the last time query (told by their events and
+	// courses, the events are removed from the time index and added again by the
+	// next query)
+	private Set<CalContent> editedContents;
+	// Number of the changes of the events (add, remove, the changes told by the
+	// contents and the changes of all the events), used to check the cached busy
+	// grid
+	private int modCount;
+	// Busy slots of the last time range asked and the modCount when it was built
+	// (null when not built)
+	private BusyGrid busyGrid;
+	private int busyGridModCount;
 
 	public ICalendar() {
 		this("My Calender");
@@ -29,6 +74,8 @@ public class ICalendar implements Cloneable {
 		this.name = name;
 		this.path = path;
 		content = new ArrayList<>();
+		courseIndex = new HashMap<>();
+		editedContents = Collections.newSetFromMap(new IdentityHashMap<>());
 	}
 
 	public String getName() {
@@ -55,12 +102,180 @@ public class ICalendar implements Cloneable {
 		this.path = path;
 	}
 
-	public ArrayList<CalContent> getContent() {
-		return content;
+	// The list cannot be changed directly (use add and remove to keep the course
+	// index consistent)
+	// The contents may be shared with other calendars -> use getEditable() to
+	// change a content
+	public List<CalContent> getContent() {
+		return Collections.unmodifiableList(content);
+	}
+
+	// Purpose: Get the content at the index to change it
+	// a normal event shared with other calendars is replaced by its copy first
+	// (the courses of the calendar copy their shared lectures when changed)
+	// The content tells the calendar when its times are changed, so it can be kept
+	// and changed after the time queries as well
+	public CalContent getEditable(int index) {
+		ownContent();
+		CalContent calContent = content.get(index);
+		if (calContent instanceof NormalEvent && ((NormalEvent) calContent).isShared()) {
+			NormalEvent normalEvent = (NormalEvent) calContent;
+			if (normalEvent.getCalendar() == this)
+				normalEvent.setCalendar(null);
+			indexEvents(normalEvent, false);
+			editedContents.remove(normalEvent);
+			normalEvent.removeHolder();
+			calContent = (CalContent) calContent.clone();
+			content.set(index, calContent);
+			contentChanged(calContent);
+		}
+		if (calContent instanceof NormalEvent)
+			((NormalEvent) calContent).setCalendar(this);
+		return calContent;
+	}
+
+	// Purpose: Get the occurrences of the events overlapping the time window [from,
+	// to) (epoch milliseconds) in time order
+	// an occurrence ending at from is included (the same as Event.occurrences())
+	public List<Occurrence> getOccurrences(long from, long to) {
+		ArrayList<Occurrence> temp = new ArrayList<>();
+		timeIndex().query(from, to, temp);
+		Collections.sort(temp);
+		return temp;
+	}
+
+	// Purpose: Get the occurrences of the events overlapping the time window [from,
+	// to) in time order
+	public List<Occurrence> getOccurrences(GregorianCalendar from, GregorianCalendar to) {
+		return getOccurrences(from.getTimeInMillis(), to.getTimeInMillis());
+	}
+
+	// Purpose: Get the occurrences happening at the time (epoch milliseconds) in
+	// time order
+	// (started not later than the time and ended after it, or started at the time)
+	public List<Occurrence> getOccurrencesAt(long time) {
+		ArrayList<Occurrence> temp = new ArrayList<>();
+		timeIndex().query(time, time + 1, temp);
+		temp.removeIf(occurrence -> occurrence.getEndMillis() <= time && occurrence.getStartMillis() != time);
+		Collections.sort(temp);
+		return temp;
 	}
 
-	private void setContent(ArrayList<CalContent> content) {
-		this.content = content;
+	// Get the busy slots of the calendar (size slots from from)
+	// The grid is cached until the calendar is changed (including the changes of the
+	// contents kept after getEditable(), which tell the calendar)
+	BusyGrid getBusyGrid(long from, int size) {
+		if (busyGrid == null || busyGridModCount != modCount || busyGrid.getFrom() != from
+				|| busyGrid.size() != size) {
+			BusyGrid temp = new BusyGrid(from, size);
+			for (Occurrence occurrence : getOccurrences(from, temp.getTo())) {
+				temp.mark(occurrence.getStartMillis(), occurrence.getEndMillis());
+			}
+			busyGrid = temp;
+			busyGridModCount = modCount;
+		}
+		return busyGrid;
+	}
+
+	// Get the time index with the changes of the edited contents
+	private TimeIndex timeIndex() {
+		if (timeIndex == null) {
+			timeIndex = new TimeIndex();
+			for (CalContent calContent : content) {
+				indexEvents(calContent, true);
+			}
+		} else {
+			for (CalContent calContent : editedContents) {
+				indexEvents(calContent, false);
+				indexEvents(calContent, true);
+			}
+		}
+		editedContents.clear();
+		return timeIndex;
+	}
+
+	// Add the events of the content to the time index (add is true) or remove them
+	// from it (nothing is done when the index is not built)
+	// The events are kept by the content, so a lecture shared by two courses of the
+	// calendar is indexed for both of them
+	private void indexEvents(CalContent calContent, boolean add) {
+		if (timeIndex == null)
+			return;
+		if (!add)
+			timeIndex.remove(calContent);
+		else if (calContent instanceof Course) {
+			for (Lecture lecture : ((Course) calContent).getLectures()) {
+				timeIndex.add(calContent, lecture);
+			}
+		} else
+			timeIndex.add(calContent, (Event) calContent);
+	}
+
+	// Purpose: Update the events of the content in the time index at the next time
+	// query and build the busy grid again
+	// Used by the normal events and the courses of the calendar when they are
+	// changed
+	void contentChanged(CalContent calContent) {
+		modCount++;
+		if (timeIndex != null)
+			editedContents.add(calContent);
+	}
+
+	// Drop the time index when all the events are changed (built again by the
+	// next time query)
+	private void dropTimeIndex() {
+		modCount++;
+		timeIndex = null;
+		editedContents.clear();
+	}
+
+	// Copy content and courseIndex when they are shared with other calendars
+	// The courses are replaced by their clones (sharing the lectures) so that each
+	// course belongs to one calendar, and the normal events are held by both lists
+	// The last calendar using the shared lists keeps them (the courses left by the
+	// other calendars belong to it again)
+	private void ownContent() {
+		if (contentUsers == null)
+			return;
+		if (contentUsers.get() == 1) {
+			for (CalContent calContent : content) {
+				if (calContent instanceof Course)
+					((Course) calContent).setCalendar(this);
+			}
+			contentUsers = null;
+			return;
+		}
+		contentUsers.decrementAndGet();
+		// The edited contents are replaced as well -> take their changes first
+		if (timeIndex != null)
+			timeIndex();
+		ArrayList<CalContent> temp = new ArrayList<>(content.size());
+		courseIndex = new HashMap<>();
+		for (CalContent calContent : content) {
+			if (calContent instanceof Course) {
+				Course course = (Course) ((Course) calContent).clone();
+				course.setCalendar(this);
+				if (((Course) calContent).getCalendar() == this)
+					((Course) calContent).setCalendar(null);
+				// The clone has the same lectures -> keeps the indexed events
+				if (timeIndex != null)
+					timeIndex.replace(calContent, course);
+				courseIndex.putIfAbsent(course.getSummary(), course);
+				temp.add(course);
+			} else {
+				((NormalEvent) calContent).addHolder();
+				temp.add(calContent);
+			}
+		}
+		content = temp;
+		contentUsers = null;
+	}
+
+	// Purpose: Find the course with the summary (the first one when there are
+	// several)
+	// return null when no course has the summary
+	public Course getCourse(String summary) {
+		return courseIndex.get(summary);
 	}
 
 	public boolean isEmpty() {
@@ -69,172 +284,45 @@ public class ICalendar implements Cloneable {
 
 	// Read a file and convert it into a ICalendar object
 	public static ICalendar readFromFile(File path) {
-		// Set time zone to UTC (default in ics format)
-		// Record the original time zone
-		TimeZone backupTz = TimeZone.getDefault();
-		// Set time zone
-		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
-		try (Scanner input = new Scanner(path)) { // Read the file
-			// Check the basic format of the file
-			if (!input.nextLine().equals("BEGIN:VCALENDAR"))
-				throw new java.io.IOException("The file has incorrect format at Line 1");
-			if (!input.nextLine().substring(0, 7).equals("PRODID:"))
-				throw new java.io.IOException("The file has incorrect format at Line 2");
-			if (!input.nextLine().equals("VERSION:2.0"))
-				throw new java.io.IOException("The file has incorrect format at Line 3");
-			// Declare the variables for reading
-			boolean endFlag = false;
-			boolean lectureReadingFlag = false;
-			String summary = null;
-			GregorianCalendar dtStart = null;
-			GregorianCalendar dtEnd = null;
-			RepeatRule rRule = null;
-			String description = null;
-			String location = null;
-			String building = null;
-			String room = null;
-			ICalendar iCal = new ICalendar(path);
-			int lineCount = 3; // For error notification
-			// Reading line by line
-			while (input.hasNext()) {
-				String str = input.nextLine();
-				lineCount++;
-				// Check if the "END:VCALENDAR" is the end of the file
-				if (endFlag && !str.isEmpty())
-					throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-				// Divide different type of input string
-				if (str.equals("BEGIN:VEVENT")) { // Beginning of a event(lecture) -> begin lecture reading
-					if (lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					lectureReadingFlag = true;
-				} else if (str.startsWith("CATEGORIES:")) { // Feature of the event but have no meaning for a lecture
-					// str example: CATEGORIES:CS
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-				} else if (str.startsWith("DTEND:")) { // The end time of the lecture -> set dtEnd
-					// str example: DTEND:20210222T151500Z
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					dtEnd = getGregorianCalendar(str);
-				} else if (str.startsWith("DTSTAMP:")) { // Feature of the event (creating time of the event) but have
-															// no meaning for a lecture
-					// str example: DTSTAMP:20210515T151343
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-				} else if (str.startsWith("DTSTART:")) { // The start time of the lecture -> set dtStart
-					// str example: DTSTART:20210222T133000Z
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					dtStart = getGregorianCalendar(str);
-				} else if (str.startsWith("LOCATION:")) { // The location of the classroom -> set location, building and
-															// room
-					// str example: LOCATION:Location: W\, Building:GEH\, Room:C504
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					String[] temp = readLocations(str);
-					location = temp[0];
-					building = temp[1];
-					room = temp[2];
-				} else if (str.startsWith("SEQUENCE:")) { // Feature of the event but have no meaning for a lecture
-					// str example: SEQUENCE:0
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-				} else if (str.startsWith("SUMMARY:")) { // The summary of the lecture(course) -> set summary
-					// str example: SUMMARY:CPS*2231*W01 COMPUTER ORGAN &
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					summary = str.substring(str.indexOf(':') + 1);
-				} else if (str.startsWith("UID:")) { // Feature of the event but have no meaning for a lecture
-					// str example: UID:af6a34ce-09dd-4f17-9427-49606f00b912
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-				} else if (str.startsWith("RRULE:")) { // Feature of the event but have no meaning for a lecture
-					// str example: RRULE:FREQ=WEEKLY;UNTIL=20210628T160000Z;INTERVAL=1
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					// TODO Optional because this part is used to represent the repeat rule of the
-					// event
-					// which is not used in a KEANWISE generated calendar
-				}
-				// TODO Add the parts related with the alarm
-				// Optional because alarm is not used in a KEANWISE generated calendar
-				else if (str.equals("END:VEVENT")) { // End of a event(lecture) -> save lecture & reset variables
-					if (!lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					// Save lecture
-					iCal.add(new Lecture(summary, dtStart, dtEnd, rRule, description, location, building, room));
-					// Reset variables
-					lectureReadingFlag = false;
-					summary = null;
-					dtStart = null;
-					dtEnd = null;
-					rRule = null;
-					description = null;
-					location = null;
-					building = null;
-					room = null;
-				} else if (str.equals("END:VCALENDAR")) { // End of the calendar -> stop reading
-					if (lectureReadingFlag)
-						throw new java.io.IOException("The file has incorrect format at Line " + lineCount);
-					endFlag = true;
-				} else { // Not supported parts -> stop reading & return a empty calendar
-					System.out.println("The formate of the calendar is wrong or is beyond the support of the program.");
-					throw new java.io.IOException("Stop reading at Line " + lineCount);
-				}
+		return readFromFile(path, 1);
+	}
 
-			}
-			return iCal;
+	// Read a file and convert it into a ICalendar object
+	// parallelism: number of threads used to decode the events of a large file
+	public static ICalendar readFromFile(File path, int parallelism) {
+		// The times are read in UTC (default in ics format)
+		return readFromFile(path, parallelism, ICSDateTime.UTC);
+	}
+
+	// Read a file and convert it into a ICalendar object
+	// zone: time zone of the times of the events
+	// The zone is passed to the reader instead of changing the default time zone,
+	// so that different files can be read at the same time
+	public static ICalendar readFromFile(File path, int parallelism, TimeZone zone) {
+		try {
+			return read(path, parallelism, zone);
 		} catch (Exception e) {
 			System.out.println(e.toString());
 			e.printStackTrace();
 			System.out.println("A error is occured when reading the file. An empty calendar is created instead.");
 			return new ICalendar();
-		} finally {
-			// Restore time zone
-			TimeZone.setDefault(backupTz);
-		}
-
-	}
-
-	// Work for the file reader to change a string containing time to
-	// GregorianCalendar object (UTC)
-	// str example: DTEND:20210222T151500Z
-	private static GregorianCalendar getGregorianCalendar(String str) {
-		// Find the start index of time
-		int startIndex = str.indexOf(':') + 1;
-		// Set year, month and date
-		GregorianCalendar temp = new GregorianCalendar(Integer.parseInt(str.substring(startIndex, startIndex + 4)), // year
-				Integer.parseInt(str.substring(startIndex + 4, startIndex + 6)) - 1, // month
-				Integer.parseInt(str.substring(startIndex + 6, startIndex + 8))); // date
-		// If the time includes hour minute and second -> read & set them
-		if (str.length() >= startIndex + 9 && str.charAt(startIndex + 8) == 'T') {
-			temp.set(GregorianCalendar.HOUR_OF_DAY, Integer.parseInt(str.substring(startIndex + 9, startIndex + 11))); // Hour
-			temp.set(GregorianCalendar.MINUTE, Integer.parseInt(str.substring(startIndex + 11, startIndex + 13))); // Minute
-			temp.set(GregorianCalendar.SECOND, Integer.parseInt(str.substring(startIndex + 13, startIndex + 15))); // Second
 		}
-		return temp;
 	}
 
-	// Work for the file reader to get the location, building and room
-	// str example: LOCATION:Location: W\, Building:GEH\, Room:C504
-	private static String[] readLocations(String str) {
-		// get location
-		int startIndex = str.indexOf(':') + 1;
-		String[] temp = new String[3];
-		for (int i = 0; i < temp.length; i++) {
-			temp[i] = null;
-		}
-		for (int i = 0; i < 3; i++) {
-			startIndex = str.indexOf(':', startIndex) + 1;
-			if (startIndex != 0) {
-				int endIndex = str.indexOf('\\', startIndex);
-				if (endIndex == -1)
-					endIndex = str.length();
-				temp[i] = str.substring(startIndex, endIndex);
-			} else
-				break;
-		}
-		return temp;
+	// Read a file and convert it into a ICalendar object
+	// throws the error instead of returning an empty calendar
+	// Used in readFromFile and the parse cache
+	static ICalendar read(File path, int parallelism, TimeZone zone) throws IOException {
+		// Read the file through the memory-mapped reader
+		// The events are added to the calendar one by one
+		ICalendar iCal = new ICalendar(path);
+		ICSReader.read(path, parallelism, zone, event -> {
+			if (event instanceof Lecture)
+				iCal.add((Lecture) event);
+			else if (event instanceof NormalEvent)
+				iCal.add((NormalEvent) event);
+		});
+		return iCal;
 	}
 
 	// Add a calendar content to the calendar -> check the actual type of the
@@ -252,15 +340,15 @@ public class ICalendar implements Cloneable {
 
 	// Add a lecture to the calendar -> add to a course or create a new course
 	public void add(Lecture lecture) {
+		ownContent();
 		// Check if the lecture belongs to any existing course
-		for (int i = 0; i < content.size(); i++) {
-			if (content.get(i) instanceof Course) {
-				// Belongs to an existing course -> add to it
-				if (((Course) (content.get(i))).getSummary().equals(lecture.getSummary())) {
-					((Course) (content.get(i))).add(lecture);
-					return;
-				}
-			}
+		Course course = courseIndex.get(lecture.getSummary());
+		// Belongs to an existing course -> add to it
+		if (course != null) {
+			// The course tells the time index
+			course.add(lecture);
+			modCount++;
+			return;
 		}
 		// Not belong to existing courses -> add a new course with the name of this
 		// lecture
@@ -269,71 +357,316 @@ public class ICalendar implements Cloneable {
 
 	// Add a course to the calendar
 	public void add(Course course) {
+		ownContent();
 		content.add(course);
+		course.setCalendar(this);
+		courseIndex.putIfAbsent(course.getSummary(), course);
+		modCount++;
+		indexEvents(course, true);
 	}
 
 	// Add a normal event to the calendar
 	public void add(NormalEvent normalEvent) {
+		ownContent();
 		content.add(normalEvent);
+		normalEvent.setCalendar(this);
+		modCount++;
+		indexEvents(normalEvent, true);
+	}
+
+	// Purpose: Remove the content at the index from the calendar
+	public CalContent remove(int index) {
+		ownContent();
+		CalContent removed = content.remove(index);
+		modCount++;
+		indexEvents(removed, false);
+		editedContents.remove(removed);
+		if (removed instanceof Course) {
+			Course course = (Course) removed;
+			course.setCalendar(null);
+			if (courseIndex.get(course.getSummary()) == course)
+				indexCourse(course.getSummary());
+		} else {
+			NormalEvent normalEvent = (NormalEvent) removed;
+			normalEvent.removeHolder();
+			if (normalEvent.getCalendar() == this)
+				normalEvent.setCalendar(null);
+		}
+		return removed;
+	}
+
+	// Purpose: Update the course index after a course of the calendar is renamed
+	// Used in Course.setSummary
+	void courseRenamed(Course course, String oldSummary) {
+		if (courseIndex.get(oldSummary) == course)
+			indexCourse(oldSummary);
+		indexCourse(course.getSummary());
+	}
+
+	// Reset the index entry of the summary to the first course with the summary
+	private void indexCourse(String summary) {
+		for (CalContent calContent : content) {
+			if (calContent instanceof Course && ((Course) calContent).getSummary().equals(summary)) {
+				courseIndex.put(summary, (Course) calContent);
+				return;
+			}
+		}
+		courseIndex.remove(summary);
 	}
 
 	// Purpose: Change the time zone the event is based on
 	// mostly used to change the American east time zone (-5) to Chinese time zone
 	// (+8)
+	// The times are moved by the difference of the raw offsets (the local times are
+	// kept only when the zones have the same DST rules) -> use rebase() before
+	// optimizing the courses for the DST of the zones (as ICalEditor imports)
 	public void changeTimeZoneBase(TimeZone src, TimeZone dest) {
+		dropTimeIndex();
 		for (int i = 0; i < content.size(); i++) {
-			content.get(i).changeTimeZoneBase(src, dest);
+			getEditable(i).changeTimeZoneBase(src, dest);
+		}
+	}
+
+	// Purpose: Change the time zone the events are based on by the rules of the
+	// zones (the local time of each time in src becomes the same local time in
+	// dest, with the DST and the historical offsets of both zones)
+	// The repeat rules without a time zone are expanded in UTC -> rebase the
+	// lectures before combining
+	// them into series (only the start, end, end of rule and exceptions are
+	// converted, the rules repeating in a time zone repeat in dest)
+	public void rebase(ZoneId src, ZoneId dest) {
+		rebase(src, dest, 1);
+	}
+
+	// Purpose: Change the time zone the events are based on by the rules of the
+	// zones
+	// parallelism > 1: the contents are converted on that number of threads
+	public void rebase(ZoneId src, ZoneId dest, int parallelism) {
+		LongUnaryOperator convert = ZoneOffsetTable.converter(src, dest);
+		dropTimeIndex();
+		ArrayList<CalContent> contents = new ArrayList<>(content.size());
+		for (int i = 0; i < content.size(); i++) {
+			contents.add(getEditable(i));
+		}
+		if (parallelism <= 1 || contents.size() < 2) {
+			for (CalContent calContent : contents) {
+				rebase(calContent, convert, dest);
+			}
+			return;
+		}
+		// Each content (a course with its lectures) is converted by one task
+		ArrayList<Callable<Void>> tasks = new ArrayList<>(contents.size());
+		for (CalContent calContent : contents) {
+			tasks.add(() -> {
+				rebase(calContent, convert, dest);
+				return null;
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (Future<Void> task : pool.invokeAll(tasks)) {
+				task.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Rebasing is interrupted", e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Convert the times of the content, then the rules repeating in a time zone
+	// repeat in dest (from the converted start, so the occurrences keep the local
+	// time of the start in dest)
+	private static void rebase(CalContent calContent, LongUnaryOperator convert, ZoneId dest) {
+		calContent.convertTimes(convert);
+		List<? extends Event> events = calContent instanceof Course ? ((Course) calContent).getLectures()
+				: List.of((NormalEvent) calContent);
+		for (Event event : events) {
+			RepeatRule rRule = event.getRRule();
+			if (rRule != null && rRule.getLocalZone() != null)
+				rRule.setLocalZone(dest);
 		}
 	}
 
 	// Purpose: Change the DST system to non-DST system
 	// mostly used to change the American DST to Chinese non-DST system
 	public void fixDST() {
-		for (CalContent calContent : content) {
-			calContent.fixDST();
+		fixDST(DSTTable.AMERICAN);
+	}
+
+	// Purpose: Change the DST system of the table to non-DST system
+	// (e.g. DSTTable.of(ZoneId.of("Europe/London")) for the British DST)
+	public void fixDST(DSTTable table) {
+		dropTimeIndex();
+		for (int i = 0; i < content.size(); i++) {
+			getEditable(i).fixDST(table);
 		}
 	}
 
 	// Purpose: Change the non-DST system to DST system
 	public void setDST() {
-		for (CalContent calContent : content) {
-			calContent.setDST();
+		setDST(DSTTable.AMERICAN);
+	}
+
+	// Purpose: Change the non-DST system to the DST system of the table
+	public void setDST(DSTTable table) {
+		dropTimeIndex();
+		for (int i = 0; i < content.size(); i++) {
+			getEditable(i).setDST(table);
 		}
 	}
 
 	// Purpose: Optimize the courses to combine the individual lectures into series
 	// and add alarms
 	public void optimizeCourses() {
+		dropTimeIndex();
+		ownContent();
 		for (int i = 0; i < content.size(); i++) {
 			if (content.get(i) instanceof Course)
 				((Course) content.get(i)).optimize();
 		}
 	}
 
-	// Purpose: Export the calendar in the ics format by string
+	// Purpose: Find the overlapping occurrences of the lectures and normal events
+	// return the conflicts in time order
+	public List<ConflictDetector.Conflict> findConflicts() {
+		return ConflictDetector.findConflicts(this);
+	}
+
+	// Purpose: Merge the weekly series of the courses on different days of week
+	// into series repeated by day
+	// return the number of VEVENTs saved in the calendar
+	public int mergeWeekdays() {
+		dropTimeIndex();
+		ownContent();
+		int saved = 0;
+		for (int i = 0; i < content.size(); i++) {
+			if (content.get(i) instanceof Course)
+				saved += ((Course) content.get(i)).mergeWeekdays();
+		}
+		return saved;
+	}
+
+	// Purpose: Export the calendar in the ics format by string (the lines end with
+	// CRLF)
 	public String exportICSFormat() {
+		return ICSWriter.toString(this);
+	}
+
+	// Purpose: Write the calendar in the ics format to the writer (not flushed)
+	@Override
+	public void writeICS(ICSWriter writer) throws IOException {
 		// Calendar header
-		StringBuilder temp = new StringBuilder(
-				"BEGIN:VCALENDAR\nPRODID:-//CPS2231Project//SimpleICalEditor//EN\nVERSION:2.0\n");
+		writer.line("BEGIN", "VCALENDAR");
+		writer.line("PRODID", "-//CPS2231Project//SimpleICalEditor//EN");
+		writer.line("VERSION", "2.0");
 		// Connect each event in the calendar
 		for (CalContent calContent : content) {
-			temp.append(calContent.exportICSFormat());
+			calContent.writeICS(writer);
 		}
 		// Calendar end sign
-		temp.append("END:VCALENDAR\n");
-		return temp.toString();
+		writer.line("END", "VCALENDAR");
 	}
 
-	// Purpose: Directly write the calendar to the output file
-	public void exportToFile(PrintWriter output) {
-		// Calendar header
-		output.println("BEGIN:VCALENDAR\nPRODID:-//CPS2231Project//SimpleICalEditor//EN\nVERSION:2.0");
-		// Connect each event in the calendar
+	// Purpose: Write the calendar in the ics format to the channel (e.g. a
+	// FileChannel) through a direct buffer
+	public void writeICS(WritableByteChannel channel) throws IOException {
+		writeICS(channel, 1);
+	}
+
+	// Purpose: Write the calendar in the ics format to the channel
+	// parallelism > 1: the contents are encoded on that number of threads
+	public void writeICS(WritableByteChannel channel, int parallelism) throws IOException {
+		ICSWriter writer = new ICSWriter(channel);
+		writeICS(writer, parallelism);
+		writer.flush();
+	}
+
+	// Purpose: Write the calendar in the ics format to the writer (not flushed)
+	// parallelism > 1: ranges of the contents are encoded into their own buffers on
+	// that number of threads and written in the original order, the bytes are the
+	// same as writeICS(writer) (the tasks use the stamp of the writer)
+	public void writeICS(ICSWriter writer, int parallelism) throws IOException {
+		int total = 0;
 		for (CalContent calContent : content) {
-			calContent.exportToFile(output);
+			total += eventCount(calContent);
+		}
+		if (parallelism <= 1 || total < PARALLEL_EXPORT_THRESHOLD) {
+			writeICS(writer);
+			return;
+		}
+		// Calendar header
+		writer.line("BEGIN", "VCALENDAR");
+		writer.line("PRODID", "-//CPS2231Project//SimpleICalEditor//EN");
+		writer.line("VERSION", "2.0");
+		// Ranges of the contents with about the same number of events
+		int target = Math.min(Math.max(total / (parallelism * EXPORT_TASKS_PER_THREAD), MIN_EVENTS_PER_EXPORT_TASK),
+				MAX_EVENTS_PER_EXPORT_TASK);
+		long stamp = writer.getStamp();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			ArrayDeque<Future<ByteBuffer[]>> parts = new ArrayDeque<>();
+			int from = 0;
+			int weight = 0;
+			for (int i = 0; i < content.size(); i++) {
+				weight += eventCount(content.get(i));
+				if (weight < target && i < content.size() - 1)
+					continue;
+				// Write the earliest part first when enough parts are encoded in advance
+				// (limits the memory used)
+				if (parts.size() == parallelism * EXPORT_TASKS_PER_THREAD)
+					writer.write(parts.poll().get());
+				int start = from;
+				int end = i + 1;
+				parts.add(pool.submit(() -> writeContents(start, end, stamp)));
+				from = end;
+				weight = 0;
+			}
+			// Write the rest of the parts in order
+			while (!parts.isEmpty()) {
+				writer.write(parts.poll().get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Exporting is interrupted", e);
+		} finally {
+			pool.shutdown();
 		}
 		// Calendar end sign
-		output.println("END:VCALENDAR");
+		writer.line("END", "VCALENDAR");
+	}
+
+	// Encode the contents from index from to index to (exclusive) into buffers
+	private ByteBuffer[] writeContents(int from, int to, long stamp) throws IOException {
+		BufferListChannel channel = new BufferListChannel();
+		ICSWriter writer = new ICSWriter(channel, ByteBuffer.allocate(ICSWriter.BUFFER_SIZE));
+		writer.setStamp(stamp);
+		for (int i = from; i < to; i++) {
+			content.get(i).writeICS(writer);
+		}
+		writer.flush();
+		return channel.getBuffers();
+	}
+
+	// Number of the events written for the content
+	private static int eventCount(CalContent calContent) {
+		return calContent instanceof Course ? ((Course) calContent).getLectures().size() : 1;
+	}
+
+	// Purpose: Directly write the calendar to the output file
+	public void exportToFile(PrintWriter output) {
+		output.print(exportICSFormat());
 	}
 
 	// Purpose: Describe the calendar in the overview format
@@ -407,14 +740,21 @@ public class ICalendar implements Cloneable {
 		return dtEnd;
 	}
 
+	// The clone shares the contents with the calendar until either of them is
+	// changed (copy-on-write), so cloning takes constant time and the memory grows
+	// with the changed events only
 	@Override
 	public Object clone() {
 		try {
 			ICalendar temp = (ICalendar) super.clone();
-			temp.setContent(new ArrayList<CalContent>());
-			for (int i = 0; i < getContent().size(); i++) {
-				temp.add((CalContent) getContent().get(i).clone());
-			}
+			if (contentUsers == null)
+				contentUsers = new AtomicInteger(1);
+			contentUsers.incrementAndGet();
+			temp.contentUsers = contentUsers;
+			// The time index and the busy grid are built by the clone when queried
+			temp.timeIndex = null;
+			temp.busyGrid = null;
+			temp.editedContents = Collections.newSetFromMap(new IdentityHashMap<>());
 			return temp;
 		} catch (CloneNotSupportedException e) {
 			e.printStackTrace();
@@ -428,8 +768,9 @@ public class ICalendar implements Cloneable {
 		ICalendar cal = (ICalendar) cal1.clone();
 		cal.setName("Mergence: " + cal1.getName() + "+" + cal2.getName());
 		cal.setPath(null);
+		// The contents of cal2 are shared as well
 		for (int i = 0; i < cal2.getContent().size(); i++) {
-			cal.add((CalContent) (cal2.getContent().get(i).clone()));
+			cal.add(cal2.getContent().get(i).sharedCopy());
 		}
 		return cal;
 	}
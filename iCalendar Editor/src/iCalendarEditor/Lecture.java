@@ -1,19 +1,36 @@
 package iCalendarEditor;
 
 import java.util.GregorianCalendar;
+import java.util.Objects;
+import java.util.TimeZone;
 
 //Lecture: content of a course
 public class Lecture extends Event{
 	
+	//Shared instances of the StringPool (equal values are the same object)
 	private String location;
 	private String building;
 	private String room;
+	//Values computed from the fields (rebuilt when used after the setters change the fields)
+	private String locationString;
+	private long fingerprint;
+	private boolean fingerprintSet;
+	//The course the lecture is in (told when the times or the repeat rule are changed), set by the course
+	private Course course;
 	
 	public Lecture(String summary, GregorianCalendar dtStart, GregorianCalendar dtEnd, RepeatRule rRule, String description, String location, String building, String room) {
 		super(summary, dtStart, dtEnd, rRule, description);
-		this.location = location;
-		this.building = building;
-		this.room = room;
+		this.location = StringPool.intern(location);
+		this.building = StringPool.intern(building);
+		this.room = StringPool.intern(room);
+	}
+	
+	//Constructor with the times in epoch milliseconds
+	public Lecture(String summary, long dtStart, long dtEnd, TimeZone zone, RepeatRule rRule, String description, String location, String building, String room) {
+		super(summary, dtStart, dtEnd, zone, rRule, description);
+		this.location = StringPool.intern(location);
+		this.building = StringPool.intern(building);
+		this.room = StringPool.intern(room);
 	}
 	
 	public Lecture() {
@@ -24,8 +41,63 @@ public class Lecture extends Event{
 		super.setSummary(summary);
 	}
 
+	//The rendered location is kept until the location, building or room is changed
 	public String getLocation() {
-		return "Location:" + location + ", Building:" + building + ", Room:" + room;
+		if (locationString == null) locationString = StringPool.intern("Location:" + location + ", Building:" + building + ", Room:" + room);
+		return locationString;
+	}
+	
+	//Purpose: Get the 64-bit fingerprint of the summary, the weekly time slot and the location
+	//			the lectures in the same series have the same fingerprint (the lectures with the same fingerprint are compared by basiclyEqualTo() to make sure)
+	//			kept until the summary, the times or the location is changed
+	public long getFingerprint() {
+		if (!fingerprintSet) {
+			final long MILLISECONDS_PER_WEEK = 1000 * 60 * 60 * 24 * 7;
+			long temp = mix(0x2545F4914F6CDD1DL, getSummary() != null? getSummary().hashCode(): 0);
+			temp = mix(temp, getDtStartMillis() % MILLISECONDS_PER_WEEK);
+			temp = mix(temp, getDtEndMillis() % MILLISECONDS_PER_WEEK);
+			temp = mix(temp, location != null? location.hashCode(): 0);
+			temp = mix(temp, building != null? building.hashCode(): 0);
+			fingerprint = mix(temp, room != null? room.hashCode(): 0);
+			fingerprintSet = true;
+		}
+		return fingerprint;
+	}
+	
+	private static long mix(long hash, long value) {
+		hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+	
+	@Override
+	protected void keyChanged() {
+		fingerprintSet = false;
+	}
+	
+	//The course tells its calendar to update the time index
+	@Override
+	protected void occurrencesChanged() {
+		if (course != null) course.lectureChanged();
+	}
+	
+	Course getCourse() {
+		return course;
+	}
+	
+	void setCourse(Course course) {
+		this.course = course;
+	}
+	
+	//Different fingerprints -> not the same without comparing the fields
+	@Override
+	public boolean basiclyEqualTo(Event event) {
+		if (event instanceof Lecture && getFingerprint() != ((Lecture)event).getFingerprint()) return false;
+		return super.basiclyEqualTo(event);
+	}
+	
+	private void locationChanged() {
+		locationString = null;
+		fingerprintSet = false;
 	}
 	
 	public String getInnerLocation() {
@@ -33,7 +105,8 @@ public class Lecture extends Event{
 	}
 	
 	public void setInnerLocation(String location) {
-		this.location = location;
+		this.location = StringPool.intern(location);
+		locationChanged();
 	}
 	
 	public String getBuilding() {
@@ -41,7 +114,8 @@ public class Lecture extends Event{
 	}
 	
 	public void setBuilding(String building) {
-		this.building = building;
+		this.building = StringPool.intern(building);
+		locationChanged();
 	}
 	
 	public String getRoom() {
@@ -49,13 +123,22 @@ public class Lecture extends Event{
 	}
 	
 	public void setRoom(String room) {
-		this.room = room;
+		this.room = StringPool.intern(room);
+		locationChanged();
 	}
 	
 	public boolean isLocationAvailable() {
 		return location != null && building != null && room != null;
 	}
 	
+	//Compare the location, building and room (usually shared instances of the StringPool -> equal by reference first)
+	@Override
+	protected boolean locationEquals(Event event) {
+		if (!(event instanceof Lecture)) return super.locationEquals(event);
+		Lecture lecture = (Lecture)event;
+		return Objects.equals(location, lecture.location) && Objects.equals(building, lecture.building) && Objects.equals(room, lecture.room);
+	}
+	
 	//Attach the description of the extended lecture to the end of the description
 	//Used in the lectureExtend()
 	public void combineDescription(Lecture lecture) {
@@ -74,10 +157,10 @@ public class Lecture extends Event{
 	public Object clone() {
 		try {
 			Lecture temp = (Lecture)super.clone();
-			temp.setDtStart((GregorianCalendar)getDtStart().clone());
-			temp.setDtEnd((GregorianCalendar)getDtEnd().clone());
-			temp.setAlarm((Alarm)getAlarm().clone());
-			temp.setRRulr((RepeatRule)getRRule().clone());
+			//The course of the clone is set when the clone is added to a course
+			temp.course = null;
+			if (getAlarm() != null) temp.setAlarm((Alarm)getAlarm().clone());
+			if (getRRule() != null) temp.setRRulr((RepeatRule)getRRule().clone());
 			return temp;
 		} catch (CloneNotSupportedException e) {
 			return null;
@@ -6,6 +6,8 @@ import java.util.GregorianCalendar;
 public class NormalEvent extends Event implements CalContent{
 	
 	private String location;
+	//The calendar the event is in (told when the times or the repeat rule are changed), set by the calendar
+	private ICalendar calendar;
 
 	public NormalEvent(String summary, GregorianCalendar dtStart, GregorianCalendar dtEnd, RepeatRule rRule, String description) {
 		super(summary, dtStart, dtEnd, rRule, description);
@@ -20,19 +22,38 @@ public class NormalEvent extends Event implements CalContent{
 	}
 
 	public void setLocation(String location) {
-		this.location = location;
+		this.location = StringPool.intern(location);
 	}
 	
 	public boolean isLocationAvailable() {
 		return location != null;
 	}
 	
+	//The calendar updates its time index at the next time query
+	@Override
+	protected void occurrencesChanged() {
+		if (calendar != null) calendar.contentChanged(this);
+	}
+	
+	ICalendar getCalendar() {
+		return calendar;
+	}
+	
+	void setCalendar(ICalendar calendar) {
+		this.calendar = calendar;
+	}
+	
+	//The copy is a new event with its own repeat rule and alarm (so it can be in the same calendar as this one and changed alone)
+	public CalContent sharedCopy() {
+		return (CalContent)clone();
+	}
+	
 	@Override
 	public Object clone() {
 		try {
 			NormalEvent temp = (NormalEvent)super.clone();
-			temp.setDtStart((GregorianCalendar)getDtStart().clone());
-			temp.setDtEnd((GregorianCalendar)getDtEnd().clone());
+			//The calendar of the clone is set when the clone is added to a calendar
+			temp.calendar = null;
 			if (getAlarm() != null) temp.setAlarm((Alarm)getAlarm().clone());
 			if (getRRule() != null) temp.setRRulr((RepeatRule)getRRule().clone());
 			return temp;
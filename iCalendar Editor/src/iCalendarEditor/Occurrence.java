@@ -0,0 +1,58 @@
+package iCalendarEditor;
+
+import java.util.GregorianCalendar;
+
+//An occurrence of a event (a lecture/normal event or one repeat of it)
+//Returned by the time queries of ICalendar
+public class Occurrence implements Comparable<Occurrence> {
+
+	private final Event event;
+	// Times in epoch milliseconds
+	private final long start;
+	private final long end;
+
+	public Occurrence(Event event, long start, long end) {
+		this.event = event;
+		this.start = start;
+		this.end = end;
+	}
+
+	public Event getEvent() {
+		return event;
+	}
+
+	public long getStartMillis() {
+		return start;
+	}
+
+	public long getEndMillis() {
+		return end;
+	}
+
+	// The GregorianCalendar is a new copy in the time zone of the event
+	public GregorianCalendar getStart() {
+		return ICSDateTime.toGregorianCalendar(start, event.getZone());
+	}
+
+	public GregorianCalendar getEnd() {
+		return ICSDateTime.toGregorianCalendar(end, event.getZone());
+	}
+
+	// Check whether the occurrence overlaps the other one (touching is not
+	// overlapping)
+	public boolean overlaps(Occurrence occurrence) {
+		return start < occurrence.end && occurrence.start < end;
+	}
+
+	// Compare the start time, then the end time
+	@Override
+	public int compareTo(Occurrence occurrence) {
+		int temp = Long.compare(start, occurrence.start);
+		return temp != 0 ? temp : Long.compare(end, occurrence.end);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%s - %s)", event.getSummary(), getStart().getTime(), getEnd().getTime());
+	}
+}
@@ -0,0 +1,492 @@
+package iCalendarEditor;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongPredicate;
+
+//Iterator of the start times (epoch milliseconds) of the occurrences of a event
+//The occurrences are generated lazily and the iteration jumps straight to the
+//requested time window instead of stepping through every earlier occurrence
+//The rule is expanded in the local time of the time zone it repeats in (UTC when
+//it has none, the same as the exported DTSTART/RRULE), then each occurrence is
+//converted to the instant (a local time in a DST gap is moved later by the length
+//of the gap, a local time in an overlap uses the earlier offset)
+public class OccurrenceIterator implements PrimitiveIterator.OfLong {
+
+	private static final long MILLISECONDS_PER_WEEK = ICSDateTime.MILLISECONDS_PER_DAY * 7;
+	// Latest year of the last occurrence of a rule ended by count (the end of the
+	// rule is written in the yyyyMMdd'T'HHmmss'Z' format)
+	private static final int MAX_YEAR = 9999;
+	// Times farther than it from 1970 are not converted between the local times
+	// and the instants (e.g. the ends of the open time windows)
+	private static final long LOCAL_LIMIT = Long.MAX_VALUE / 2;
+
+	private final RepeatRule rule;
+	// Offsets of the time zone the rule repeats in (null for UTC)
+	private final ZoneOffsetTable table;
+	// DTSTART as a local time of the zone (all the candidates are local times) and
+	// as the instant
+	private final long dtStart;
+	private final long instantStart;
+	private final long to;
+	private final long until;
+	private final long count;
+	private final long[] exceptions;
+	// Days (1 Monday - 7 Sunday) of the BYDAY part in order, null when not set
+	private final int[] days;
+	// Fields of DTSTART used by monthly and yearly rules (monthIndex is the month of
+	// the first period: the month of BYMONTH for a yearly rule with it)
+	private final int startDate;
+	private final long monthIndex;
+	private final long timeOfDay;
+	// Whether a monthly or yearly rule repeats on days of week of the month (BYDAY)
+	// instead of the date of DTSTART, and the dates of the month of the period
+	private final boolean byDayOfMonth;
+	private final int byDay;
+	private final int[] nthDays;
+	private final int[] dates = new int[31];
+	private int dateNumber;
+
+	// Position of the iteration: index of the period, index of the day in the
+	// period, number of occurrences generated before the position (for COUNT)
+	private long period;
+	private int dayIndex;
+	private long generated;
+	private long next;
+	private boolean nextFound;
+	private boolean finished;
+
+	// rule: null for a event without repeat
+	// the occurrences starting in [from, to) are iterated (an exception removes the
+	// occurrence starting at the time of the exception)
+	public OccurrenceIterator(RepeatRule rule, long dtStart, long from, long to) {
+		this.rule = rule;
+		this.table = rule != null && rule.getLocalZone() != null ? ZoneOffsetTable.of(rule.getLocalZone()) : null;
+		this.instantStart = dtStart;
+		this.dtStart = localOf(dtStart);
+		this.to = to;
+		if (rule == null) {
+			until = dtStart;
+			count = 1;
+			exceptions = new long[0];
+			days = null;
+			startDate = 0;
+			monthIndex = 0;
+			timeOfDay = 0;
+			byDayOfMonth = false;
+			byDay = 0;
+			nthDays = null;
+		} else {
+			until = rule.getEndDtMillis() != Event.NO_TIME ? rule.getEndDtMillis() : Long.MAX_VALUE;
+			count = rule.getCount() > 0 ? rule.getCount() : Long.MAX_VALUE;
+			exceptions = rule.getExceptionTimes();
+			days = rule.getByDay() != 0 && (rule.getFrequency() == RepeatRule.DAILY
+					|| rule.getFrequency() == RepeatRule.WEEKLY) ? RepeatRule.daysOf(rule.getByDay()) : null;
+			long startDay = Math.floorDiv(this.dtStart, ICSDateTime.MILLISECONDS_PER_DAY);
+			int civil = ICSDateTime.civilDate(startDay);
+			startDate = civil % 100;
+			timeOfDay = this.dtStart - startDay * ICSDateTime.MILLISECONDS_PER_DAY;
+			byDay = rule.getByDay();
+			nthDays = rule.getNthDays();
+			byDayOfMonth = (byDay != 0 || nthDays != null)
+					&& (rule.getFrequency() == RepeatRule.MONTHLY || rule.getFrequency() == RepeatRule.YEARLY);
+			int startMonth = civil / 100 % 100;
+			if (rule.getFrequency() == RepeatRule.YEARLY && rule.getByMonth() != 0) {
+				// A month of BYMONTH before the month of DTSTART starts in the next period
+				monthIndex = (civil / 10000) * 12L + (rule.getByMonth() - 1)
+						+ (rule.getByMonth() < startMonth ? 12L * Math.max(rule.getInterval(), 1) : 0);
+			} else
+				monthIndex = (civil / 10000) * 12L + (startMonth - 1);
+		}
+		jump(from);
+	}
+
+	// Purpose: Get the occurrences overlapping the time window [from, to) (an
+	// occurrence starting before from but ending after it is included)
+	public static OccurrenceIterator overlapping(RepeatRule rule, long dtStart, long duration, long from, long to) {
+		long length = Math.max(duration, 0);
+		return new OccurrenceIterator(rule, dtStart, from < Long.MIN_VALUE + length ? Long.MIN_VALUE : from - length,
+				to);
+	}
+
+	// Purpose: Get the start of the occurrence a exception is for
+	// An exception at the end of an occurrence but not at the start of any
+	// occurrence is moved to the start of that occurrence (the earlier versions
+	// wrote the exceptions of the combined lectures at their end times), other
+	// exceptions are kept
+	// the exceptions of the rule are not used (convert all of them before adding)
+	public static long exceptionStart(RepeatRule rule, long dtStart, long duration, long exception) {
+		if (duration <= 0 || exception < Long.MIN_VALUE + duration)
+			return exception;
+		OccurrenceIterator occurrences = new OccurrenceIterator(rule, dtStart, exception - duration, exception + 1);
+		long first = occurrences.hasNext() ? occurrences.nextLong() : exception;
+		if (first != exception - duration)
+			return exception;
+		while (occurrences.hasNext()) {
+			if (occurrences.nextLong() == exception)
+				return exception;
+		}
+		return first;
+	}
+
+	// Purpose: Get the start of the last occurrence of a rule ended by COUNT
+	// The period of the last occurrence is computed from the count (the exceptions
+	// are counted as occurrences, the same as the iteration), so a large COUNT does
+	// not step through every occurrence
+	// return dtStart when the rule never has a occurrence
+	// throws IllegalArgumentException when the last occurrence is after year 9999
+	public static long lastOccurrence(RepeatRule rule, long dtStart) {
+		// An iterator of no time window, only the fields of the rule are used
+		OccurrenceIterator iterator = new OccurrenceIterator(rule, dtStart, dtStart, dtStart);
+		long last;
+		try {
+			last = iterator.instantOf(iterator.last());
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("The repeat rule ends after year " + MAX_YEAR);
+		}
+		if (ICSDateTime.civilDate(Math.floorDiv(last, ICSDateTime.MILLISECONDS_PER_DAY)) / 10000 > MAX_YEAR)
+			throw new IllegalArgumentException("The repeat rule ends after year " + MAX_YEAR);
+		return last;
+	}
+
+	// Compute the local start of the count-th occurrence (Math.*Exact throws
+	// ArithmeticException when the time is out of the range of long)
+	private long last() {
+		if (rule == null || count == Long.MAX_VALUE)
+			return dtStart;
+		long index = count - 1;
+		long step = Math.max(rule.getInterval(), 1);
+		int frequency = rule.getFrequency();
+		if (frequency == RepeatRule.WEEKLY && days != null) {
+			// Occurrences of the first week are those not earlier than DTSTART, then
+			// every week of the rule has all the days
+			long firstWeek = weekStart(dtStart);
+			int firstWeekNumber = 0;
+			for (int day : days) {
+				if (firstWeek + (day - 1) * ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay >= dtStart)
+					firstWeekNumber++;
+			}
+			long week;
+			int day;
+			if (index < firstWeekNumber) {
+				week = 0;
+				day = days.length - firstWeekNumber + (int) index;
+			} else {
+				week = 1 + (index - firstWeekNumber) / days.length;
+				day = (int) ((index - firstWeekNumber) % days.length);
+			}
+			return Math.addExact(firstWeek, Math.multiplyExact(Math.multiplyExact(week, step), MILLISECONDS_PER_WEEK))
+					+ (days[day] - 1) * ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+		}
+		if (frequency == RepeatRule.DAILY || frequency == RepeatRule.WEEKLY) {
+			long period = index;
+			if (days != null) {
+				// DAILY with BYDAY: the days of week of the periods repeat every 7 periods
+				// (every period when the interval is a multiple of 7)
+				int cycle = step % 7 == 0 ? 1 : 7;
+				long startDay = Math.floorDiv(dtStart, ICSDateTime.MILLISECONDS_PER_DAY);
+				period = periodOf(index, cycle, k -> contains(days, ICSDateTime.dayOfWeek(startDay + k * step)));
+				if (period < 0)
+					return dtStart;
+			}
+			long length = frequency == RepeatRule.DAILY ? ICSDateTime.MILLISECONDS_PER_DAY : MILLISECONDS_PER_WEEK;
+			return Math.addExact(dtStart, Math.multiplyExact(Math.multiplyExact(period, step), length));
+		}
+		if (byDayOfMonth)
+			return lastByDayOfMonth(index, frequency == RepeatRule.YEARLY ? 12 * step : step,
+					frequency == RepeatRule.YEARLY ? 400 : 4800);
+		if (frequency == RepeatRule.MONTHLY || frequency == RepeatRule.YEARLY) {
+			long months = frequency == RepeatRule.YEARLY ? 12 * step : step;
+			long period = index;
+			if (startDate > 28) {
+				// Months without the date have no occurrence, the lengths of the months
+				// repeat every 400 years (4800 months)
+				int cycle = frequency == RepeatRule.YEARLY ? 400 : 4800;
+				period = periodOf(index, cycle, k -> {
+					long month = monthIndex + k * months;
+					return startDate <= ICSDateTime.daysInMonth((int) Math.floorDiv(month, 12),
+							Math.floorMod(month, 12) + 1);
+				});
+				if (period < 0)
+					return dtStart;
+			}
+			long month = Math.addExact(monthIndex, Math.multiplyExact(period, months));
+			long year = Math.floorDiv(month, 12);
+			if (year > MAX_YEAR)
+				throw new ArithmeticException();
+			return ICSDateTime.epochDay((int) year, Math.floorMod(month, 12) + 1, startDate)
+					* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+		}
+		return dtStart;
+	}
+
+	// Compute the start of the occurrence of the index of a rule on days of week of
+	// the month: the occurrences of the first period are those not earlier than
+	// DTSTART, then the numbers of the occurrences of the periods repeat every cycle
+	// periods (the lengths and the days of week of the months repeat every 400
+	// years)
+	private long lastByDayOfMonth(long index, long months, int cycle) {
+		int number = datesOf(0, dates);
+		int first = 0;
+		while (first < number && ICSDateTime.epochDay(year(monthIndex), monthOfYear(monthIndex), dates[first])
+				* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay < dtStart)
+			first++;
+		if (index < number - first)
+			return ICSDateTime.epochDay(year(monthIndex), monthOfYear(monthIndex), dates[first + (int) index])
+					* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+		index -= number - first;
+		// Numbers of the occurrences of the periods 1 to k of the cycle
+		long[] numbers = new long[cycle + 1];
+		long cycleMonths = Math.floorMod(months, 4800);
+		for (int k = 0; k < cycle; k++) {
+			long month = Math.floorMod(monthIndex + cycleMonths * (k + 1), 4800) + 2000 * 12;
+			numbers[k + 1] = numbers[k]
+					+ datesOf(byDay, nthDays, year(month), monthOfYear(month), dates);
+		}
+		if (numbers[cycle] == 0)
+			return dtStart;
+		long rest = index % numbers[cycle];
+		int k = 0;
+		while (numbers[k + 1] <= rest)
+			k++;
+		long period = Math.addExact(Math.multiplyExact(index / numbers[cycle], (long) cycle), k + 1);
+		long month = Math.addExact(monthIndex, Math.multiplyExact(period, months));
+		if (Math.floorDiv(month, 12) > MAX_YEAR)
+			throw new ArithmeticException();
+		datesOf(byDay, nthDays, year(month), monthOfYear(month), dates);
+		return ICSDateTime.epochDay(year(month), monthOfYear(month), dates[(int) (rest - numbers[k])])
+				* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+	}
+
+	// Get the dates of the month of the period (in the array, in order)
+	// return the number of the dates
+	private int datesOf(long period, int[] dates) {
+		long month = monthIndex + period * Math.max(rule.getInterval(), 1)
+				* (rule.getFrequency() == RepeatRule.YEARLY ? 12 : 1);
+		return datesOf(byDay, nthDays, year(month), monthOfYear(month), dates);
+	}
+
+	// Purpose: Get the dates of a month on the days of week (bits of byDay) and
+	// the days of week with the ordinals in the month (nthDays of RepeatRule, null
+	// for none) in order
+	// return the number of the dates put in the array (31 items)
+	static int datesOf(int byDay, int[] nthDays, int year, int month, int[] dates) {
+		int length = ICSDateTime.daysInMonth(year, month);
+		int firstDay = ICSDateTime.dayOfWeek(ICSDateTime.epochDay(year, month, 1));
+		int number = 0;
+		for (int date = 1; date <= length; date++) {
+			int day = (firstDay + date - 2) % 7;
+			if ((byDay & 1 << day) != 0 || nthDays != null
+					&& (nthDays[day] & (RepeatRule.ordinalBit((date + 6) / 7)
+							| RepeatRule.ordinalBit(-((length - date) / 7 + 1)))) != 0)
+				dates[number++] = date;
+		}
+		return number;
+	}
+
+	private static int year(long month) {
+		return (int) Math.floorDiv(month, 12);
+	}
+
+	private static int monthOfYear(long month) {
+		return Math.floorMod(month, 12) + 1;
+	}
+
+	// Get the period of the occurrence of the index when the periods having a
+	// occurrence repeat every cycle periods
+	// return -1 when no period has a occurrence
+	private static long periodOf(long index, int cycle, LongPredicate hasOccurrence) {
+		int[] periods = new int[cycle];
+		int number = 0;
+		for (int k = 0; k < cycle; k++) {
+			if (hasOccurrence.test(k))
+				periods[number++] = k;
+		}
+		if (number == 0)
+			return -1;
+		return Math.addExact(Math.multiplyExact(index / number, (long) cycle), periods[(int) (index % number)]);
+	}
+
+	// Move the position to the first occurrence not earlier than from
+	private void jump(long from) {
+		// The period of the local time of from (two days earlier in a time zone: the
+		// local times in a DST gap before from are moved after it)
+		long localFrom = table != null ? localOf(from) - 2 * ICSDateTime.MILLISECONDS_PER_DAY : from;
+		if (rule != null && localFrom > dtStart)
+			jumpPeriod(localFrom);
+		// Skip the occurrences before from in the period
+		while (hasNext() && next < from)
+			nextFound = false;
+	}
+
+	// Move the position to the period containing from
+	// (only when the number of skipped occurrences can be counted directly)
+	private void jumpPeriod(long from) {
+		int frequency = rule.getFrequency();
+		long step = Math.max(rule.getInterval(), 1);
+		if (frequency == RepeatRule.WEEKLY && days != null) {
+			// The periods are weeks beginning with Monday
+			long firstWeek = weekStart(dtStart);
+			long target = (from - firstWeek) / (MILLISECONDS_PER_WEEK * step);
+			if (target > 0) {
+				// Occurrences of the first week are those not earlier than DTSTART
+				int firstWeekNumber = 0;
+				for (int day : days) {
+					if (firstWeek + (day - 1) * ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay >= dtStart)
+						firstWeekNumber++;
+				}
+				generated = firstWeekNumber + (target - 1) * days.length;
+				period = target;
+			}
+		} else if (days == null && (frequency == RepeatRule.DAILY || frequency == RepeatRule.WEEKLY)) {
+			long length = (frequency == RepeatRule.DAILY ? ICSDateTime.MILLISECONDS_PER_DAY : MILLISECONDS_PER_WEEK)
+					* step;
+			period = (from - dtStart) / length;
+			generated = period;
+		} else if ((byDayOfMonth ? count == Long.MAX_VALUE : startDate <= 28)
+				&& (frequency == RepeatRule.MONTHLY || frequency == RepeatRule.YEARLY)) {
+			// Every month has the date -> every period has an occurrence (the number of
+			// the skipped occurrences on days of week is only needed for COUNT)
+			int civil = ICSDateTime.civilDate(Math.floorDiv(from, ICSDateTime.MILLISECONDS_PER_DAY));
+			long months = (civil / 10000) * 12L + (civil / 100 % 100 - 1) - monthIndex;
+			period = Math.max(months / (frequency == RepeatRule.YEARLY ? 12 * step : step) - 1, 0);
+			generated = period;
+		}
+	}
+
+	// Get the start of the week (Monday 00:00) containing the local time
+	private static long weekStart(long time) {
+		long day = Math.floorDiv(time, ICSDateTime.MILLISECONDS_PER_DAY);
+		return (day - ICSDateTime.dayOfWeek(day) + 1) * ICSDateTime.MILLISECONDS_PER_DAY;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!nextFound && !finished) {
+			long candidate = generate();
+			if (candidate == Long.MIN_VALUE)
+				continue;
+			long start = instantOf(candidate);
+			if (start >= to || start > until || generated >= count) {
+				finished = true;
+				break;
+			}
+			generated++;
+			if (!isException(start)) {
+				next = start;
+				nextFound = true;
+			}
+		}
+		return nextFound;
+	}
+
+	@Override
+	public long nextLong() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		nextFound = false;
+		return next;
+	}
+
+	// Generate the next candidate (local time) and move the position
+	// return Long.MIN_VALUE when the candidate is not a occurrence (e.g. 31st of a
+	// short month, day not in BYDAY)
+	private long generate() {
+		if (rule == null)
+			return period++ == 0 ? dtStart : Long.MAX_VALUE;
+		long step = Math.max(rule.getInterval(), 1);
+		switch (rule.getFrequency()) {
+		case 0: { // DAILY
+			long candidate = dtStart + period++ * step * ICSDateTime.MILLISECONDS_PER_DAY;
+			if (days != null && !contains(days,
+					ICSDateTime.dayOfWeek(Math.floorDiv(candidate, ICSDateTime.MILLISECONDS_PER_DAY))))
+				return notOccurrence(candidate);
+			return candidate;
+		}
+		case 1: { // WEEKLY
+			if (days == null)
+				return dtStart + period++ * step * MILLISECONDS_PER_WEEK;
+			long candidate = weekStart(dtStart) + period * step * MILLISECONDS_PER_WEEK
+					+ (days[dayIndex] - 1) * ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+			if (++dayIndex == days.length) {
+				dayIndex = 0;
+				period++;
+			}
+			// Days of the first week before DTSTART are not occurrences
+			return candidate < dtStart ? Long.MIN_VALUE : candidate;
+		}
+		case 2: // MONTHLY
+		case 3: { // YEARLY
+			long month = monthIndex + period * step * (rule.getFrequency() == RepeatRule.YEARLY ? 12 : 1);
+			int year = year(month);
+			int monthOfYear = monthOfYear(month);
+			// The occurrences cannot be written after year 9999
+			if (year > MAX_YEAR)
+				return Long.MAX_VALUE;
+			if (byDayOfMonth) {
+				if (dayIndex == 0)
+					dateNumber = datesOf(period, dates);
+				if (dateNumber == 0) {
+					period++;
+					return notOccurrence(ICSDateTime.epochDay(year, monthOfYear, 1) * ICSDateTime.MILLISECONDS_PER_DAY
+							+ timeOfDay);
+				}
+				long candidate = ICSDateTime.epochDay(year, monthOfYear, dates[dayIndex])
+						* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+				if (++dayIndex == dateNumber) {
+					dayIndex = 0;
+					period++;
+				}
+				// Days of the first month before DTSTART are not occurrences
+				return candidate < dtStart ? Long.MIN_VALUE : candidate;
+			}
+			period++;
+			long candidate = ICSDateTime.epochDay(year, monthOfYear, Math.min(startDate, 28))
+					* ICSDateTime.MILLISECONDS_PER_DAY + timeOfDay;
+			if (startDate > ICSDateTime.daysInMonth(year, monthOfYear))
+				return notOccurrence(candidate);
+			return candidate + (startDate - Math.min(startDate, 28)) * ICSDateTime.MILLISECONDS_PER_DAY;
+		}
+		default:
+			return Long.MAX_VALUE;
+		}
+	}
+
+	// Skip a candidate which is not a occurrence, unless it is after the time
+	// window or the end of the rule (then the iteration finishes)
+	private long notOccurrence(long candidate) {
+		long start = instantOf(candidate);
+		return start >= to || start > until ? candidate : Long.MIN_VALUE;
+	}
+
+	// Get the local time of the instant in the zone of the rule
+	private long localOf(long instant) {
+		if (table == null || instant < -LOCAL_LIMIT || instant > LOCAL_LIMIT)
+			return instant;
+		return instant + table.offsetAt(instant);
+	}
+
+	// Get the instant of the local time in the zone of the rule (DTSTART is the
+	// instant it was given as, even in an overlap)
+	private long instantOf(long local) {
+		if (local == dtStart)
+			return instantStart;
+		if (table == null || local < -LOCAL_LIMIT || local > LOCAL_LIMIT)
+			return local;
+		return table.toInstant(local);
+	}
+
+	// Check whether the start of the occurrence is a exception
+	private boolean isException(long start) {
+		return Arrays.binarySearch(exceptions, start) >= 0;
+	}
+
+	private static boolean contains(int[] days, int day) {
+		for (int d : days) {
+			if (d == day)
+				return true;
+		}
+		return false;
+	}
+}
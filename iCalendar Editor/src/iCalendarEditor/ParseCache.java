@@ -0,0 +1,209 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Cache of the imported ics files
+//Stores the calendar after reading, rebase() and optimizeCourses() as a calendar
+//snapshot, so importing the same file again skips the parsing and the
+//optimization
+//The entries are named by the SHA-256 of the file content, the file size and
+//the modification time, and the least recently used entries are deleted when
+//the total size of the cache exceeds the limit
+public class ParseCache {
+
+	// Default limit of the total size of the cache files
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+	// Extension of the cache files
+	private static final String EXTENSION = ".calcache";
+	// Size of the part of the file hashed at a time
+	private static final int HASH_WINDOW_SIZE = 1 << 26;
+
+	private final File directory;
+	private final long maxBytes;
+	// Cache files in the order of use (least recently used first): name -> size
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// Cache in the temporary directory of the system
+	public ParseCache() {
+		this(new File(System.getProperty("java.io.tmpdir"), "iCalendarEditor-cache"), DEFAULT_MAX_BYTES);
+	}
+
+	// directory: where the cache files are kept (created when not exist)
+	// maxBytes: limit of the total size of the cache files
+	public ParseCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		directory.mkdirs();
+		// Load the existing cache files in the order of their last use
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if (files != null) {
+			Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+			for (File file : files) {
+				entries.put(file.getName(), file.length());
+				totalBytes += file.length();
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	// Total size of the cache files in bytes
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	// Purpose: Read a ics file through the cache
+	// Hit -> load the stored calendar
+	// Miss -> read the file, rebase the times from src to dest (by the rules of
+	// both zones) and optimize the courses, then store the calendar
+	// The times are rebased before the lectures are combined into series (the
+	// repeat rules are expanded in UTC), so every lecture keeps its local time
+	// return a empty calendar when the file cannot be read (the same as
+	// ICalendar.readFromFile)
+	public ICalendar readFromFile(File path, int parallelism, ZoneId src, ZoneId dest) {
+		// The zone ids may have '/' -> not a part of a file name
+		String variant = src.getId().replace('/', '.') + "-" + dest.getId().replace('/', '.');
+		String name = null;
+		try {
+			name = entryName(path, variant);
+			ICalendar iCal = load(name, path);
+			if (iCal != null) {
+				hits.incrementAndGet();
+				return iCal;
+			}
+		} catch (IOException e) {
+			// Damaged cache file -> read the ics file again
+			remove(name);
+		}
+		misses.incrementAndGet();
+		try {
+			ICalendar iCal = ICalendar.read(path, parallelism, ICSDateTime.UTC);
+			iCal.rebase(src, dest, parallelism);
+			iCal.optimizeCourses();
+			if (name != null)
+				store(name, iCal);
+			return iCal;
+		} catch (Exception e) {
+			System.out.println(e.toString());
+			e.printStackTrace();
+			System.out.println("A error is occured when reading the file. An empty calendar is created instead.");
+			return new ICalendar();
+		}
+	}
+
+	// Purpose: Get the name of the cache file of a ics file
+	// (the snapshot version is a part of the name, so the entries of an older
+	// version are not used)
+	// name example: 3f2a...9c-20480-1613980800000-America.New_York-Asia.Shanghai-v2.calcache
+	private static String entryName(File path, String variant) throws IOException {
+		StringBuilder temp = new StringBuilder(96);
+		for (byte b : hash(path))
+			temp.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return temp.append('-').append(path.length()).append('-').append(path.lastModified()).append('-')
+				.append(variant).append("-v").append(CalendarSnapshot.VERSION).append(EXTENSION).toString();
+	}
+
+	// Purpose: Get the SHA-256 of the file content
+	// the file is mapped into memory part by part
+	private static byte[] hash(File path) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += HASH_WINDOW_SIZE) {
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(HASH_WINDOW_SIZE, size - position));
+				digest.update(window);
+			}
+		}
+		return digest.digest();
+	}
+
+	// Purpose: Load the calendar of a cache file
+	// return null when the cache file does not exist
+	private ICalendar load(String name, File path) throws IOException {
+		File file = new File(directory, name);
+		synchronized (this) {
+			if (entries.get(name) == null)
+				return null;
+		}
+		ICalendar iCal = new ICalendar(path);
+		CalendarSnapshot.read(file, iCal);
+		// Mark the cache file as recently used (also for the next program run)
+		file.setLastModified(System.currentTimeMillis());
+		return iCal;
+	}
+
+	// Purpose: Store the calendar as a cache file and delete the least recently
+	// used cache files when the cache is too large
+	// The snapshot is written to a temporary file of its own (another thread may be
+	// storing the same file at the same time) and moved to the cache file
+	// atomically, so a cache file is always complete
+	private void store(String name, ICalendar iCal) {
+		File file = new File(directory, name);
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(directory.toPath(), name, ".tmp");
+			CalendarSnapshot.write(iCal, temp.toFile());
+			Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			try {
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				// Left in the directory (not a cache file)
+			}
+			return;
+		}
+		synchronized (this) {
+			Long old = entries.put(name, file.length());
+			totalBytes += file.length() - (old != null ? old : 0);
+			// Delete the least recently used cache files (the new one is kept)
+			Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+			while (totalBytes > maxBytes && entries.size() > 1) {
+				Map.Entry<String, Long> entry = iterator.next();
+				new File(directory, entry.getKey()).delete();
+				totalBytes -= entry.getValue();
+				iterator.remove();
+			}
+		}
+	}
+
+	// Remove a damaged cache file
+	private synchronized void remove(String name) {
+		if (name == null)
+			return;
+		Long size = entries.remove(name);
+		if (size != null)
+			totalBytes -= size;
+		new File(directory, name).delete();
+	}
+}
@@ -1,19 +1,50 @@
 package iCalendarEditor;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.function.LongUnaryOperator;
 
-public class RepeatRule implements Cloneable { // Use as a variable type for repeat representing the repeat rule
+public class RepeatRule implements Cloneable, ICSWriter.Writable { // Use as a variable type for repeat representing the repeat rule
 
 	public static int DAILY = 0;
 	public static int WEEKLY = 1;
 	public static int MONTHLY = 2;
 	public static int YEARLY = 3;
 	private int frequency;
-	private GregorianCalendar endDt;
+	// Times are kept as epoch milliseconds (Event.NO_TIME for no end time)
+	private long endDt;
+	// Time zone of the GregorianCalendar objects of the times (shared, never
+	// modified)
+	private TimeZone zone;
+	// Time zone the rule repeats in (the zone of a DTSTART with TZID: the
+	// occurrences keep the local time of DTSTART across the DST changes), null
+	// when the rule repeats in UTC
+	private ZoneId localZone;
 	private int interval;
-	private ArrayList<GregorianCalendar> exceptions;
+	// Number of occurrences (0 when the rule is ended by endDt)
+	private int count;
+	// Days of week of the rule (bit 0 Monday - bit 6 Sunday, 0 when not set)
+	// a MONTHLY or YEARLY rule repeats on all these days of the month
+	private int byDay;
+	// Days of week with the ordinals in the month (e.g. 1MO the first Monday, -1FR
+	// the last Friday) of a MONTHLY or YEARLY rule: the ordinals of each day of
+	// week (nthDays[0] Monday - nthDays[6] Sunday, bits of ordinalBit()), null
+	// when not set (never modified, replaced by the setter)
+	private int[] nthDays;
+	// Month (1 - 12) of a YEARLY rule (BYMONTH), 0 for the month of the start
+	// a YEARLY rule with days of week repeats on those days of the month
+	private int byMonth;
+	// Exceptions in time order without duplicates (the first exceptionNumber
+	// items), so a time is looked up by binary search
+	private long[] exceptions;
+	private int exceptionNumber;
+	// The event of the rule (told when the rule is changed), set by the event
+	private Event event;
 
 	public RepeatRule() {
 		this(new GregorianCalendar());
@@ -24,10 +55,18 @@ public class RepeatRule implements Cloneable { // Use as a variable type for rep
 	}
 
 	public RepeatRule(int frequency, GregorianCalendar endDt, int interval) {
+		this(frequency, endDt != null ? endDt.getTimeInMillis() : Event.NO_TIME,
+				endDt != null ? endDt.getTimeZone() : ICSDateTime.UTC, interval);
+	}
+
+	// endDt: epoch milliseconds (Event.NO_TIME when the rule repeats forever)
+	// zone: time zone of the GregorianCalendar objects returned by the getters
+	public RepeatRule(int frequency, long endDt, TimeZone zone, int interval) {
 		this.frequency = frequency;
 		this.endDt = endDt;
+		this.zone = zone;
 		this.interval = interval;
-		this.exceptions = new ArrayList<>();
+		this.exceptions = new long[0];
 	}
 
 	public int getFrequency() {
@@ -36,14 +75,54 @@ public class RepeatRule implements Cloneable { // Use as a variable type for rep
 
 	public void setFrequency(int frequency) {
 		this.frequency = frequency;
+		changed();
 	}
 
+	// The GregorianCalendar is a new copy of the time (changing it does not change
+	// the rule)
 	public GregorianCalendar getEndDt() {
-		return endDt;
+		return endDt != Event.NO_TIME ? ICSDateTime.toGregorianCalendar(endDt, zone) : null;
 	}
 
+	// endDt is null when the rule repeats forever
+	// setting endDt changes a rule ended by count to a rule ended by endDt
 	public void setEndDt(GregorianCalendar endDt) {
+		this.endDt = endDt != null ? endDt.getTimeInMillis() : Event.NO_TIME;
+		if (endDt != null)
+			zone = endDt.getTimeZone();
+		this.count = 0;
+		changed();
+	}
+
+	// End time in epoch milliseconds (Event.NO_TIME when the rule repeats forever)
+	public long getEndDtMillis() {
+		return endDt;
+	}
+
+	// Change the end time without changing a rule ended by count
+	public void setEndDtMillis(long endDt) {
 		this.endDt = endDt;
+		changed();
+	}
+
+	public TimeZone getZone() {
+		return zone;
+	}
+
+	public ZoneId getLocalZone() {
+		return localZone;
+	}
+
+	// localZone: null for a rule repeating in UTC
+	public void setLocalZone(ZoneId localZone) {
+		this.localZone = localZone;
+		changed();
+	}
+
+	// Purpose: Get the local time (local milliseconds since 1970-01-01T00:00) of a
+	// instant in the zone the rule repeats in (the instant for UTC)
+	public long localTimeOf(long instant) {
+		return localZone != null ? instant + ZoneOffsetTable.of(localZone).offsetAt(instant) : instant;
 	}
 
 	public int getInterval() {
@@ -52,53 +131,248 @@ public class RepeatRule implements Cloneable { // Use as a variable type for rep
 
 	public void setInterval(int interval) {
 		this.interval = interval;
+		changed();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+		changed();
+	}
+
+	public int getByDay() {
+		return byDay;
+	}
+
+	public void setByDay(int byDay) {
+		this.byDay = byDay;
+		changed();
+	}
+
+	// The array is a new copy (null when not set)
+	public int[] getNthDays() {
+		return nthDays != null ? nthDays.clone() : null;
+	}
+
+	// nthDays: the ordinals of each day of week (7 items, bits of ordinalBit()),
+	// null or all 0 for none
+	public void setNthDays(int[] nthDays) {
+		boolean set = false;
+		if (nthDays != null) {
+			if (nthDays.length != 7)
+				throw new IllegalArgumentException("The ordinals of 7 days of week are needed: " + nthDays.length);
+			for (int ordinals : nthDays) {
+				set |= ordinals != 0;
+			}
+		}
+		this.nthDays = set ? nthDays.clone() : null;
+		changed();
+	}
+
+	// Purpose: Get the bit of an ordinal of a day of week in the month (1 to 5 the
+	// first to the fifth, -1 to -5 the last to the fifth last) in nthDays
+	public static int ordinalBit(int ordinal) {
+		if (ordinal == 0 || ordinal < -5 || ordinal > 5)
+			throw new IllegalArgumentException("Illegal ordinal of a day in the month: " + ordinal);
+		return ordinal > 0 ? 1 << (ordinal - 1) : 1 << (4 - ordinal);
+	}
+
+	public int getByMonth() {
+		return byMonth;
+	}
+
+	public void setByMonth(int byMonth) {
+		if (byMonth < 0 || byMonth > 12)
+			throw new IllegalArgumentException("Illegal month: " + byMonth);
+		this.byMonth = byMonth;
+		changed();
+	}
+
+	// Purpose: Get the days (1 Monday - 7 Sunday) of a BYDAY bit mask in order
+	public static int[] daysOf(int byDay) {
+		int[] temp = new int[Integer.bitCount(byDay & 0x7F)];
+		for (int day = 0, i = 0; day < 7; day++) {
+			if ((byDay & (1 << day)) != 0)
+				temp[i++] = day + 1;
+		}
+		return temp;
 	}
 
+	// The list is a new copy of the exceptions (changing it does not change the
+	// rule)
 	public ArrayList<GregorianCalendar> getExceptions() {
-		return exceptions;
+		ArrayList<GregorianCalendar> temp = new ArrayList<>(exceptionNumber);
+		for (int i = 0; i < exceptionNumber; i++) {
+			temp.add(ICSDateTime.toGregorianCalendar(exceptions[i], zone));
+		}
+		return temp;
 	}
 
 	public void setExceptions(ArrayList<GregorianCalendar> exceptions) {
-		this.exceptions = exceptions;
+		this.exceptions = new long[exceptions.size()];
+		this.exceptionNumber = 0;
+		for (GregorianCalendar exception : exceptions) {
+			addException(exception);
+		}
+		changed();
+	}
+
+	public int getExceptionNumber() {
+		return exceptionNumber;
+	}
+
+	// Purpose: Get the exceptions in epoch milliseconds in time order (a new
+	// array)
+	public long[] getExceptionTimes() {
+		return Arrays.copyOf(exceptions, exceptionNumber);
+	}
+
+	// Purpose: Check whether the time (epoch milliseconds) is an exception
+	public boolean isException(long time) {
+		return Arrays.binarySearch(exceptions, 0, exceptionNumber, time) >= 0;
 	}
 
 	// Purpose: Get the introduction of the rRule
 	// used in event information
 	public String getIntroducation() {
-		return String.format("Frequency: %s\nUntil: %s\nInterval: %d", getFrequencyString(), endDt.getTime().toString(),
-				interval);
+		return String.format("Frequency: %s\nUntil: %s\nInterval: %d", getFrequencyString(),
+				endDt != Event.NO_TIME ? getEndDt().getTime().toString() : "forever", interval)
+				+ (count > 0 ? String.format("\nCount: %d", count) : "")
+				+ (byDay != 0 || nthDays != null ? String.format("\nDays: %s", getByDayString()) : "")
+				+ (byMonth != 0 ? String.format("\nMonth: %d", byMonth) : "");
+	}
+
+	// Purpose: Get the ics expression of the days of week (e.g. MO,WE or
+	// 1MO,-1FR)
+	public String getByDayString() {
+		final String[] DAY_NAMES = { "MO", "TU", "WE", "TH", "FR", "SA", "SU" };
+		StringBuilder temp = new StringBuilder();
+		for (int day : daysOf(byDay)) {
+			if (temp.length() > 0)
+				temp.append(",");
+			temp.append(DAY_NAMES[day - 1]);
+		}
+		if (nthDays != null) {
+			for (int ordinal : new int[] { 1, 2, 3, 4, 5, -1, -2, -3, -4, -5 }) {
+				for (int day = 0; day < 7; day++) {
+					if ((nthDays[day] & ordinalBit(ordinal)) == 0)
+						continue;
+					if (temp.length() > 0)
+						temp.append(",");
+					temp.append(ordinal).append(DAY_NAMES[day]);
+				}
+			}
+		}
+		return temp.toString();
+	}
+
+	// Purpose: Get the start times (epoch milliseconds) of the occurrences
+	// overlapping the time window [from, to) lazily
+	// dtStart, duration: the first occurrence of the event
+	public OccurrenceIterator occurrences(long dtStart, long duration, long from, long to) {
+		return OccurrenceIterator.overlapping(this, dtStart, duration, from, to);
 	}
 
 	// Add exception to the repeat rule
+	// (only the instant is kept, the rule keeps its time zone for the end time and
+	// the other exceptions)
 	public void addException(GregorianCalendar exception) {
-		exceptions.add(exception);
-	}
-
-	// Purpose: Export the exceptions to ics format
-	// When there are exceptions -> export the exceptions
-	// No exception -> return empty string
-	// used in export methods
-	private String exportExceptions() {
-		// Check whether exceptions exist
-		if (!exceptions.isEmpty()) {
-			// Exist -> export
-			StringBuilder temp = new StringBuilder("EXDATE:");
-			for (int i = 0; i < exceptions.size(); i++) {
-				// Add time
-				temp.append(Event.formatGregorianCalendarTime(exceptions.get(i)));
-				// Check whether this is the last exception
-				// No -> add ","
-				if (i < exceptions.size() - 1)
-					temp.append(",");
-				// Yes -> change line
-				else
-					temp.append("\n");
+		addException(exception.getTimeInMillis());
+	}
+
+	// Add exception in epoch milliseconds to the repeat rule
+	// (an existing exception is not added again)
+	public void addException(long exception) {
+		// Usual case: later than all the exceptions -> append
+		if (exceptionNumber == 0 || exception > exceptions[exceptionNumber - 1]) {
+			ensureCapacity(exceptionNumber + 1);
+			exceptions[exceptionNumber++] = exception;
+			changed();
+			return;
+		}
+		int index = Arrays.binarySearch(exceptions, 0, exceptionNumber, exception);
+		if (index >= 0)
+			return;
+		index = -index - 1;
+		ensureCapacity(exceptionNumber + 1);
+		System.arraycopy(exceptions, index, exceptions, index + 1, exceptionNumber - index);
+		exceptions[index] = exception;
+		exceptionNumber++;
+		changed();
+	}
+
+	// Purpose: Add the exceptions from the time (included) to the end time
+	// (excluded) with the step at once
+	// used to add the skipped weeks of a vacation
+	public void addExceptions(long from, long to, long step) {
+		if (step <= 0)
+			throw new IllegalArgumentException("The step of the exceptions must be positive: " + step);
+		if (from >= to)
+			return;
+		int number = (int) ((to - 1 - from) / step + 1);
+		// Usual case: later than all the exceptions -> append
+		if (exceptionNumber == 0 || from > exceptions[exceptionNumber - 1]) {
+			ensureCapacity(exceptionNumber + number);
+			for (long time = from; time < to; time += step) {
+				exceptions[exceptionNumber++] = time;
+			}
+			changed();
+			return;
+		}
+		// Merge the two sorted sequences (dropping the duplicates)
+		long[] temp = new long[exceptionNumber + number];
+		int size = 0;
+		int i = 0;
+		long time = from;
+		while (i < exceptionNumber || time < to) {
+			long next;
+			if (time >= to || i < exceptionNumber && exceptions[i] <= time)
+				next = exceptions[i++];
+			else {
+				next = time;
+				time += step;
 			}
-			return temp.toString();
+			if (size == 0 || temp[size - 1] != next)
+				temp[size++] = next;
+		}
+		exceptions = temp;
+		exceptionNumber = size;
+		changed();
+	}
+
+	// Purpose: Convert the end time and the exceptions by the converter (used to
+	// change the time zone base)
+	// the converter must keep the order of the times (equal results are merged)
+	public void convertTimes(LongUnaryOperator convert) {
+		if (endDt != Event.NO_TIME)
+			endDt = convert.applyAsLong(endDt);
+		int size = 0;
+		for (int i = 0; i < exceptionNumber; i++) {
+			long exception = convert.applyAsLong(exceptions[i]);
+			if (size == 0 || exceptions[size - 1] != exception)
+				exceptions[size++] = exception;
 		}
-		// Not exist -> return empty string
-		else
-			return "";
+		exceptionNumber = size;
+		changed();
+	}
+
+	// Set by the event when the rule is given to it
+	void setEvent(Event event) {
+		this.event = event;
+	}
+
+	// Tell the event that its occurrences may be changed
+	private void changed() {
+		if (event != null)
+			event.occurrencesChanged();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > exceptions.length)
+			exceptions = Arrays.copyOf(exceptions, Math.max(capacity, Math.max(exceptions.length * 2, 4)));
 	}
 
 	// Purpose: Get the word expression of the frequency for export
@@ -122,9 +396,48 @@ public class RepeatRule implements Cloneable { // Use as a variable type for rep
 	// Purpose: Export the repeat rule in the ics format by string
 	// when the frequency value is wrong it is set to weekly by default
 	// Output example: RRULE:FREQ=WEEKLY;UNTIL=20210628T160000Z;INTERVAL=1
+	// RRULE:FREQ=WEEKLY;COUNT=10;INTERVAL=1;BYDAY=MO,WE
+	// RRULE:FREQ=YEARLY;INTERVAL=1;BYDAY=4TH;BYMONTH=11
 	public String exportICSFormat() {
-		return String.format("RRULE:FREQ=%s;UNTIL=%s;INTERVAL=%d\n%s", getFrequencyString(),
-				Event.formatGregorianCalendarTime(getEndDt()), interval, exportExceptions());
+		return ICSWriter.toString(this);
+	}
+
+	// Purpose: Write the repeat rule and its exceptions in the ics format
+	// When there are exceptions -> EXDATE line after the RRULE line
+	// A rule repeating in a time zone writes the exceptions as local times with
+	// the TZID (the same as DTSTART) and UNTIL in UTC
+	@Override
+	public void writeICS(ICSWriter writer) throws IOException {
+		writer.property("RRULE").value("FREQ=").value(getFrequencyString());
+		if (count > 0)
+			writer.value(";COUNT=").value(count);
+		else if (endDt != Event.NO_TIME)
+			writer.value(";UNTIL=").time(localZone != null ? endDt : Event.baseTime(endDt, zone));
+		writer.value(";INTERVAL=").value(interval);
+		if (byDay != 0 || nthDays != null)
+			writer.value(";BYDAY=").value(getByDayString());
+		if (byMonth != 0)
+			writer.value(";BYMONTH=").value(byMonth);
+		writer.endLine();
+		if (exceptionNumber == 0)
+			return;
+		if (localZone != null) {
+			writer.property("EXDATE;TZID=" + localZone.getId());
+			for (int i = 0; i < exceptionNumber; i++) {
+				if (i > 0)
+					writer.value(',');
+				writer.localTime(localTimeOf(exceptions[i]));
+			}
+			writer.endLine();
+			return;
+		}
+		writer.property("EXDATE");
+		for (int i = 0; i < exceptionNumber; i++) {
+			if (i > 0)
+				writer.value(',');
+			writer.time(Event.baseTime(exceptions[i], zone));
+		}
+		writer.endLine();
 	}
 
 	// Purpose: Directly write the repeat rule to the output file
@@ -137,11 +450,9 @@ public class RepeatRule implements Cloneable { // Use as a variable type for rep
 	public Object clone() {
 		try {
 			RepeatRule temp = (RepeatRule) super.clone();
-			temp.setEndDt((GregorianCalendar) endDt.clone());
-			temp.setExceptions(new ArrayList<GregorianCalendar>());
-			for (int i = 0; i < getExceptions().size(); i++) {
-				temp.getExceptions().add((GregorianCalendar) getExceptions().get(i).clone());
-			}
+			temp.exceptions = Arrays.copyOf(exceptions, exceptionNumber);
+			// The event of the clone is set when the clone is given to a event
+			temp.event = null;
 			return temp;
 		} catch (CloneNotSupportedException e) {
 			return null;
@@ -0,0 +1,259 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Objects;
+
+//Builder of the weekly lecture series of a course
+//The lectures are divided into buckets by summary, weekly start time, weekly end
+//time and location (the same as Event.basiclyEqualTo), so each lecture only
+//looks up the series of its bucket instead of checking all earlier lectures
+//The result is the same as combining the lectures one by one in time order
+public class SeriesBuilder {
+
+	private static final long MILLISECONDS_PER_WEEK = 1000 * 60 * 60 * 24 * 7;
+	// 1970-01-01 is Thursday -> shift to make the weeks start on Monday
+	private static final long MONDAY_SHIFT = ICSDateTime.MILLISECONDS_PER_DAY * 3;
+
+	// Purpose: Combine the individual lectures into weekly series and add alarms
+	// The lectures are sorted by start time, a lecture without repeat rule extends
+	// the first series of its bucket (adding exceptions for the skipped weeks) or
+	// becomes a new series
+	// return the lectures left (series and lectures not changed) in time order
+	public static ArrayList<Lecture> buildSeries(ArrayList<Lecture> lectures) {
+		ArrayList<Lecture> sorted = new ArrayList<>(lectures);
+		Collections.sort(sorted);
+		HashMap<SeriesKey, Series> buckets = new HashMap<>();
+		ArrayList<Series> seriesList = new ArrayList<>();
+		ArrayList<Lecture> result = new ArrayList<>(sorted.size());
+		for (Lecture lecture : sorted) {
+			SeriesKey key = new SeriesKey(lecture);
+			Series series = buckets.get(key);
+			if (lecture.getRRule() != null) {
+				// Existing series -> kept, and extended by the later lectures when it is a
+				// weekly series ended by a time
+				if (series == null && isExtendable(lecture.getRRule())) {
+					series = new Series(lecture);
+					buckets.put(key, series);
+					seriesList.add(series);
+				}
+				result.add(lecture);
+			} else if (series != null)
+				// Extend the series of the bucket
+				series.extend(lecture);
+			else {
+				// Make the lecture base of a series -> add repeat rule and alarm
+				lecture.setRRulr(new RepeatRule(RepeatRule.WEEKLY, lecture.getDtEndMillis(), lecture.getZone(), 1));
+				lecture.setAlarm(new Alarm(30, lecture.getSummary()));
+				series = new Series(lecture);
+				buckets.put(key, series);
+				seriesList.add(series);
+				result.add(lecture);
+			}
+		}
+		for (Series series : seriesList) {
+			series.finish();
+		}
+		return result;
+	}
+
+	// Purpose: Merge the weekly series on different days of week into series
+	// repeated by day (e.g. FREQ=WEEKLY;BYDAY=MO,WE,FR)
+	// The series are merged only when they have the same summary, location, alarm,
+	// time of day and duration and start and end in the same weeks, so the merged
+	// series has exactly the occurrences of the original ones (the exceptions are
+	// kept)
+	// The days of week are those of the UTC times (the times are exported in UTC)
+	// return the number of series (VEVENTs) saved
+	public static int mergeWeekdays(ArrayList<Lecture> lectures) {
+		HashMap<MergeKey, Lecture> heads = new HashMap<>();
+		ArrayList<Lecture> result = new ArrayList<>(lectures.size());
+		for (Lecture lecture : lectures) {
+			RepeatRule rRule = lecture.getRRule();
+			if (rRule == null || !isExtendable(rRule) || rRule.getCount() != 0) {
+				result.add(lecture);
+				continue;
+			}
+			MergeKey key = new MergeKey(lecture);
+			Lecture head = heads.get(key);
+			int day = dayBit(lecture.getDtStartMillis());
+			if (head == null) {
+				heads.put(key, lecture);
+				result.add(lecture);
+			} else if ((daysOf(head) & day) != 0)
+				// A series on the same day of week -> kept alone
+				result.add(lecture);
+			else
+				merge(head, lecture, day);
+		}
+		int saved = lectures.size() - result.size();
+		if (saved > 0) {
+			lectures.clear();
+			lectures.addAll(result);
+		}
+		return saved;
+	}
+
+	// Days of week (BYDAY bits) of the series
+	private static int daysOf(Lecture lecture) {
+		int byDay = lecture.getRRule().getByDay();
+		return byDay != 0 ? byDay : dayBit(lecture.getDtStartMillis());
+	}
+
+	// BYDAY bit of the day of week of the UTC time
+	private static int dayBit(long millis) {
+		return 1 << (ICSDateTime.dayOfWeek(Math.floorDiv(millis, ICSDateTime.MILLISECONDS_PER_DAY)) - 1);
+	}
+
+	// Merge the series on another day of week into the head series
+	private static void merge(Lecture head, Lecture other, int day) {
+		RepeatRule rRule = head.getRRule();
+		RepeatRule otherRule = other.getRRule();
+		rRule.setByDay(daysOf(head) | day);
+		// The series starts on the earliest day
+		if (other.getDtStartMillis() < head.getDtStartMillis()) {
+			head.setDtStartMillis(other.getDtStartMillis());
+			head.setDtEndMillis(other.getDtEndMillis());
+		}
+		if (otherRule.getEndDtMillis() > rRule.getEndDtMillis())
+			rRule.setEndDtMillis(otherRule.getEndDtMillis());
+		for (long exception : otherRule.getExceptionTimes())
+			rRule.addException(exception);
+		// Attach the description (the same as Lecture.combineDescription)
+		if (other.getDescription() != null && !other.getDescription().equals(head.getDescription()))
+			head.setDescription(head.getDescription() == null ? other.getDescription()
+					: head.getDescription() + "\n\n" + other.getDescription());
+	}
+
+	// Check whether the repeat rule can be extended by lectures
+	// (only the weekly series ended by a time repeating in UTC, the weeks are
+	// counted in UTC)
+	private static boolean isExtendable(RepeatRule rRule) {
+		return rRule.getFrequency() == RepeatRule.WEEKLY && rRule.getInterval() == 1 && rRule.getByDay() == 0
+				&& rRule.getEndDtMillis() != Event.NO_TIME && rRule.getLocalZone() == null;
+	}
+
+	// Key of the bucket: summary, weekly start time, weekly end time, location
+	// Hashed by the fingerprint of the lecture, the lectures with the same
+	// fingerprint are compared by Event.basiclyEqualTo
+	private static class SeriesKey {
+
+		private final Lecture lecture;
+		private final long fingerprint;
+
+		SeriesKey(Lecture lecture) {
+			this.lecture = lecture;
+			this.fingerprint = lecture.getFingerprint();
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (fingerprint ^ (fingerprint >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SeriesKey))
+				return false;
+			SeriesKey key = (SeriesKey) obj;
+			return fingerprint == key.fingerprint && lecture.basiclyEqualTo(key.lecture);
+		}
+	}
+
+	// Key of the series merged by day: summary, location, alarm, time of day,
+	// duration, week of the first occurrence and week of the last occurrence
+	// The summary and the location are usually shared instances of the StringPool
+	// -> equal by reference before the strings are compared
+	private static class MergeKey {
+
+		private final String summary;
+		private final String location;
+		private final String building;
+		private final String room;
+		private final int alarmTimeAhead;
+		private final String alarmDescription;
+		private final long timeOfDay;
+		private final long duration;
+		private final long firstWeek;
+		private final long lastWeek;
+		private final int hash;
+
+		MergeKey(Lecture lecture) {
+			summary = lecture.getSummary();
+			location = lecture.getInnerLocation();
+			building = lecture.getBuilding();
+			room = lecture.getRoom();
+			Alarm alarm = lecture.getAlarm();
+			alarmTimeAhead = alarm != null ? alarm.getTimeAhead() : -1;
+			alarmDescription = alarm != null ? alarm.getDescription() : null;
+			long dtStart = lecture.getDtStartMillis();
+			timeOfDay = Math.floorMod(dtStart, ICSDateTime.MILLISECONDS_PER_DAY);
+			duration = lecture.getDtEndMillis() - dtStart;
+			firstWeek = Math.floorDiv(dtStart + MONDAY_SHIFT, MILLISECONDS_PER_WEEK);
+			// The series ends at the end of its last occurrence
+			lastWeek = Math.floorDiv(lecture.getRRule().getEndDtMillis() - duration + MONDAY_SHIFT,
+					MILLISECONDS_PER_WEEK);
+			hash = Objects.hash(summary, location, building, room, alarmTimeAhead, alarmDescription, timeOfDay,
+					duration, firstWeek, lastWeek);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MergeKey))
+				return false;
+			MergeKey key = (MergeKey) obj;
+			return timeOfDay == key.timeOfDay && duration == key.duration && firstWeek == key.firstWeek
+					&& lastWeek == key.lastWeek && alarmTimeAhead == key.alarmTimeAhead
+					&& Objects.equals(summary, key.summary) && Objects.equals(location, key.location)
+					&& Objects.equals(building, key.building) && Objects.equals(room, key.room)
+					&& Objects.equals(alarmDescription, key.alarmDescription);
+		}
+	}
+
+	// A series being built
+	// The descriptions of the combined lectures are collected and set once finished
+	private static class Series {
+
+		private final Lecture lecture;
+		private final RepeatRule rRule;
+		private StringBuilder description;
+
+		Series(Lecture lecture) {
+			this.lecture = lecture;
+			this.rRule = lecture.getRRule();
+		}
+
+		// Extend the series to the end of the lecture and add exceptions (for
+		// vacations) at the starts of the skipped weeks
+		void extend(Lecture next) {
+			// The first week after the last occurrence (the starts of the occurrences are
+			// whole weeks after the start of the series)
+			long start = lecture.getDtStartMillis();
+			long temp = start
+					+ (Math.floorDiv(rRule.getEndDtMillis() - start, MILLISECONDS_PER_WEEK) + 1) * MILLISECONDS_PER_WEEK;
+			rRule.setEndDtMillis(next.getDtEndMillis());
+			rRule.addExceptions(temp, next.getDtStartMillis(), MILLISECONDS_PER_WEEK);
+			// Attach the description (the same as Lecture.combineDescription)
+			if (next.getDescription() != null) {
+				if (description == null) {
+					description = new StringBuilder();
+					if (lecture.getDescription() != null)
+						description.append(lecture.getDescription()).append("\n\n");
+				} else
+					description.append("\n\n");
+				description.append(next.getDescription());
+			}
+		}
+
+		void finish() {
+			if (description != null)
+				lecture.setDescription(description.toString());
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package iCalendarEditor;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+//Dictionary of the strings repeated by the events (summary, location, building,
+//room)
+//A term has thousands of lectures but only a few dozen courses and rooms, so the
+//equal values read from the files or set by the setters are kept as one shared
+//instance, and the comparisons of the values can check the reference first
+//The strings are held weakly (a value no longer used by any event is collected)
+//and the pool is divided into stripes so that the files read in parallel do not
+//wait for each other
+public final class StringPool {
+
+	// Number of the stripes (must be power of 2)
+	private static final int STRIPES = 16;
+
+	// value -> the shared instance of the value
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final WeakHashMap<String, WeakReference<String>>[] pools = new WeakHashMap[STRIPES];
+
+	static {
+		for (int i = 0; i < STRIPES; i++) {
+			pools[i] = new WeakHashMap<>();
+		}
+	}
+
+	private StringPool() {
+	}
+
+	// Purpose: Get the shared instance of the string
+	// the string itself becomes the shared instance when the value is new
+	// return null when the string is null
+	public static String intern(String str) {
+		if (str == null)
+			return null;
+		int hash = str.hashCode();
+		WeakHashMap<String, WeakReference<String>> pool = pools[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+		synchronized (pool) {
+			WeakReference<String> reference = pool.get(str);
+			String shared = reference != null ? reference.get() : null;
+			if (shared != null)
+				return shared;
+			pool.put(str, new WeakReference<>(str));
+			return str;
+		}
+	}
+
+	// Purpose: Get the number of the values in the pool (used to check the
+	// pool)
+	public static int size() {
+		int size = 0;
+		for (WeakHashMap<String, WeakReference<String>> pool : pools) {
+			synchronized (pool) {
+				size += pool.size();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,206 @@
+package iCalendarEditor;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+//Interval tree of the time spans of the events of a calendar
+//The span of a event is from the start of its first occurrence to the end of its
+//last occurrence, the spans are kept in a treap ordered by the start time and
+//each node knows the latest end time in its subtree, so a query only visits the
+//nodes whose subtree can overlap the time window (O(log n + k))
+//The repeat rules are expanded by the queries inside the time window only
+//The nodes are kept by the calendar content they belong to (the course of a
+//lecture, the normal event itself), so the same lecture in two courses has a node
+//for each of them
+//Used by ICalendar, which adds and removes the contents as the calendar changes
+class TimeIndex {
+
+	private static final class Node {
+
+		private final Event event;
+		private final long start;
+		private final long end;
+		// Order of the nodes with the same start time
+		private final long sequence;
+		private final int priority;
+		private long maxEnd;
+		private Node left;
+		private Node right;
+		// Next node of the same content
+		private Node sameContent;
+
+		Node(Event event, long start, long end, long sequence, int priority) {
+			this.event = event;
+			this.start = start;
+			this.end = end;
+			this.sequence = sequence;
+			this.priority = priority;
+			this.maxEnd = end;
+		}
+
+		int compareTo(Node node) {
+			int temp = Long.compare(start, node.start);
+			return temp != 0 ? temp : Long.compare(sequence, node.sequence);
+		}
+
+		void update() {
+			maxEnd = end;
+			if (left != null && left.maxEnd > maxEnd)
+				maxEnd = left.maxEnd;
+			if (right != null && right.maxEnd > maxEnd)
+				maxEnd = right.maxEnd;
+		}
+	}
+
+	private Node root;
+	// First node of each content (found by reference, the spans of the nodes are
+	// kept even when the events are changed later)
+	private final IdentityHashMap<CalContent, Node> nodes = new IdentityHashMap<>();
+	private int size;
+	private long sequence;
+	// State of the random priorities (xorshift)
+	private int seed = 0x2F6B3A1D;
+
+	// Purpose: Get the number of the events in the index
+	public int size() {
+		return size;
+	}
+
+	// Purpose: Add the event of the content with its current times (an event
+	// without start time is not added)
+	public void add(CalContent calContent, Event event) {
+		if (event.getDtStartMillis() == Event.NO_TIME)
+			return;
+		Node node = new Node(event, event.getDtStartMillis(), spanEnd(event), sequence++, nextPriority());
+		node.sameContent = nodes.put(calContent, node);
+		root = insert(root, node);
+		size++;
+	}
+
+	// Purpose: Remove the events of the content (by the spans they were added with)
+	public void remove(CalContent calContent) {
+		for (Node node = nodes.remove(calContent); node != null; node = node.sameContent) {
+			root = delete(root, node);
+			size--;
+		}
+	}
+
+	// Purpose: Move the events of a content to its replacement (e.g. a course
+	// replaced by its clone sharing the lectures)
+	public void replace(CalContent calContent, CalContent replacement) {
+		Node node = nodes.remove(calContent);
+		if (node != null)
+			nodes.put(replacement, node);
+	}
+
+	// Purpose: Add the occurrences of the events overlapping the time window [from,
+	// to) to the list (the same as Event.occurrences(), an occurrence ending at
+	// from is included)
+	public void query(long from, long to, List<Occurrence> result) {
+		query(root, from, to, result);
+	}
+
+	private static void query(Node node, long from, long to, List<Occurrence> result) {
+		while (node != null && node.maxEnd >= from) {
+			query(node.left, from, to, result);
+			// The right subtree and the node start later than the node
+			if (node.start >= to)
+				return;
+			if (node.end >= from) {
+				Event event = node.event;
+				long duration = event.getDtEndMillis() - event.getDtStartMillis();
+				OccurrenceIterator occurrences = event.occurrences(from, to);
+				while (occurrences.hasNext()) {
+					long start = occurrences.nextLong();
+					result.add(new Occurrence(event, start, start + duration));
+				}
+			}
+			node = node.right;
+		}
+	}
+
+	// Get the end of the last occurrence of the event (Long.MAX_VALUE when the
+	// event repeats forever or by count)
+	private static long spanEnd(Event event) {
+		long duration = Math.max(event.getDtEndMillis() - event.getDtStartMillis(), 0);
+		RepeatRule rRule = event.getRRule();
+		if (rRule == null)
+			return event.getDtStartMillis() + duration;
+		if (rRule.getEndDtMillis() == Event.NO_TIME)
+			return Long.MAX_VALUE;
+		// The occurrences start not later than the end of the rule
+		long end = rRule.getEndDtMillis() + duration;
+		return end < rRule.getEndDtMillis() ? Long.MAX_VALUE : end;
+	}
+
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	private static Node insert(Node node, Node inserted) {
+		if (node == null)
+			return inserted;
+		if (inserted.compareTo(node) < 0) {
+			node.left = insert(node.left, inserted);
+			if (node.left.priority > node.priority)
+				node = rotateRight(node);
+		} else {
+			node.right = insert(node.right, inserted);
+			if (node.right.priority > node.priority)
+				node = rotateLeft(node);
+		}
+		node.update();
+		return node;
+	}
+
+	private static Node delete(Node node, Node deleted) {
+		if (node == null)
+			return null;
+		int temp = deleted.compareTo(node);
+		if (temp < 0)
+			node.left = delete(node.left, deleted);
+		else if (temp > 0)
+			node.right = delete(node.right, deleted);
+		else
+			return merge(node.left, node.right);
+		node.update();
+		return node;
+	}
+
+	// Merge two treaps (all the nodes of left are before the nodes of right)
+	private static Node merge(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		}
+		right.left = merge(left, right.left);
+		right.update();
+		return right;
+	}
+
+	private static Node rotateRight(Node node) {
+		Node temp = node.left;
+		node.left = temp.right;
+		temp.right = node;
+		node.update();
+		temp.update();
+		return temp;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node temp = node.right;
+		node.right = temp.left;
+		temp.left = node;
+		node.update();
+		temp.update();
+		return temp;
+	}
+}
@@ -0,0 +1,108 @@
+package iCalendarEditor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongUnaryOperator;
+
+//Offsets of a time zone (including the DST and the historical changes) taken from
+//its ZoneRules
+//The transitions from 1900 to 2100 are listed once per zone, so the offset of a
+//time is found by a binary search of a long[] instead of creating Instant and
+//ZonedDateTime objects (times out of the range are asked to the rules)
+//Used by ICalendar.rebase()
+final class ZoneOffsetTable {
+
+	private static final long FROM = ICSDateTime.epochDay(1900, 1, 1) * ICSDateTime.MILLISECONDS_PER_DAY;
+	private static final long TO = ICSDateTime.epochDay(2100, 1, 1) * ICSDateTime.MILLISECONDS_PER_DAY;
+
+	private static final ConcurrentHashMap<ZoneId, ZoneOffsetTable> tables = new ConcurrentHashMap<>();
+
+	private final ZoneId zone;
+	private final ZoneRules rules;
+	// Instants of the transitions in time order
+	private final long[] transitions;
+	// Local times from which the offsets after the transitions are used for local
+	// times (the later end of the gap or overlap of each transition)
+	private final long[] localStarts;
+	// Offsets in milliseconds: offsets[i] is used before transition i, the last
+	// one after all the transitions
+	private final long[] offsets;
+
+	private ZoneOffsetTable(ZoneId zone) {
+		this.zone = zone;
+		this.rules = zone.getRules();
+		long[] temp = new long[16];
+		long[] localTemp = new long[16];
+		long[] offsetTemp = new long[17];
+		int size = 0;
+		offsetTemp[0] = rules.getOffset(Instant.ofEpochMilli(FROM)).getTotalSeconds() * 1000L;
+		ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(FROM));
+		while (transition != null && transition.getInstant().toEpochMilli() < TO) {
+			if (size == temp.length) {
+				temp = Arrays.copyOf(temp, size * 2);
+				localTemp = Arrays.copyOf(localTemp, size * 2);
+				offsetTemp = Arrays.copyOf(offsetTemp, size * 2 + 1);
+			}
+			long instant = transition.getInstant().toEpochMilli();
+			long before = transition.getOffsetBefore().getTotalSeconds() * 1000L;
+			long after = transition.getOffsetAfter().getTotalSeconds() * 1000L;
+			temp[size] = instant;
+			localTemp[size] = instant + Math.max(before, after);
+			offsetTemp[++size] = after;
+			transition = rules.nextTransition(transition.getInstant());
+		}
+		transitions = Arrays.copyOf(temp, size);
+		localStarts = Arrays.copyOf(localTemp, size);
+		offsets = Arrays.copyOf(offsetTemp, size + 1);
+	}
+
+	// Purpose: Get the table of the time zone (shared by all the users of the zone)
+	public static ZoneOffsetTable of(ZoneId zone) {
+		return tables.computeIfAbsent(zone, ZoneOffsetTable::new);
+	}
+
+	// Purpose: Get the converter of the times based on the source zone to the
+	// times based on the destination zone (the local time in the source zone
+	// becomes the same local time in the destination zone)
+	// The converter is safe to use from many threads
+	public static LongUnaryOperator converter(ZoneId src, ZoneId dest) {
+		ZoneOffsetTable srcTable = of(src);
+		ZoneOffsetTable destTable = of(dest);
+		return time -> destTable.toInstant(time + srcTable.offsetAt(time));
+	}
+
+	// Purpose: Get the offset in milliseconds at the instant (epoch milliseconds)
+	public long offsetAt(long instant) {
+		if (instant < FROM || instant >= TO)
+			return rules.getOffset(Instant.ofEpochMilli(instant)).getTotalSeconds() * 1000L;
+		return offsets[indexAfter(transitions, instant)];
+	}
+
+	// Purpose: Get the instant (epoch milliseconds) of the local time (local
+	// milliseconds since 1970-01-01T00:00)
+	// the same as ZonedDateTime.ofLocal(): a local time in a gap is moved later by
+	// the length of the gap, a local time in an overlap uses the earlier offset
+	public long toInstant(long local) {
+		if (local < FROM || local >= TO) {
+			LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000),
+					Math.floorMod(local, 1000) * 1000000, ZoneOffset.UTC);
+			return ZonedDateTime.ofLocal(dateTime, zone, null).toInstant().toEpochMilli();
+		}
+		// A local time in the gap or overlap of a transition is before the local start
+		// of the transition -> the offset before it
+		return local - offsets[indexAfter(localStarts, local)];
+	}
+
+	// Number of the items not later than the time
+	private static int indexAfter(long[] times, long time) {
+		int index = Arrays.binarySearch(times, time);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+}
@@ -0,0 +1,90 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+
+//Benchmark of adding lectures to a calendar (each lecture is added to the course
+//of its summary, found by the course index of the calendar) for n lectures over
+//n/2 courses, doubling n from 25000 to 400000
+//Up to the baseline limit the search of the earlier ICalendar.add(Lecture) is
+//timed as well (a scan of the content for the course with the same summary),
+//and both are checked to make the same courses
+//Each size prints the best time of the rounds after the warm-up round
+//Usage: CourseIndexBenchmark [rounds] [baseline limit]
+//Exits with status 1 when the courses differ
+public class CourseIndexBenchmark {
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int baselineLimit = args.length > 1 ? Integer.parseInt(args[1]) : 25000;
+
+		int failures = 0;
+		for (int n = 25000; n <= 400000; n *= 2) {
+			Lecture[] lectures = new Lecture[n];
+			for (int i = 0; i < n; i++)
+				lectures[i] = new Lecture("C" + i % (n / 2), i * 60000L, i * 60000L + 1000, ICSDateTime.UTC, null,
+						null, "W", "GEH", "C1");
+			long best = Long.MAX_VALUE;
+			ICalendar iCal = null;
+			for (int round = 0; round <= rounds; round++) {
+				long start = System.nanoTime();
+				iCal = new ICalendar("Benchmark");
+				for (Lecture lecture : lectures)
+					iCal.add(lecture);
+				long time = System.nanoTime() - start;
+				if (round > 0)
+					best = Math.min(best, time);
+			}
+			System.out.printf("%d lectures, %d courses: %.0f ms", n, iCal.getContent().size(), best / 1e6);
+			if (n > baselineLimit) {
+				System.out.println();
+				continue;
+			}
+			best = Long.MAX_VALUE;
+			ArrayList<Course> courses = null;
+			for (int round = 0; round <= rounds; round++) {
+				long start = System.nanoTime();
+				courses = addByScan(lectures);
+				long time = System.nanoTime() - start;
+				if (round > 0)
+					best = Math.min(best, time);
+			}
+			System.out.printf(", scan %.0f ms%n", best / 1e6);
+			if (!sameCourses(iCal, courses)) {
+				System.out.println(n + " lectures: the courses differ from the scan");
+				failures++;
+			}
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// The search of the earlier ICalendar.add(Lecture): the first course with the
+	// same summary, or a new course at the end
+	private static ArrayList<Course> addByScan(Lecture[] lectures) {
+		ArrayList<Course> courses = new ArrayList<>();
+		for (Lecture lecture : lectures) {
+			Course found = null;
+			for (int i = 0; i < courses.size() && found == null; i++)
+				if (courses.get(i).getSummary().equals(lecture.getSummary()))
+					found = courses.get(i);
+			if (found == null)
+				courses.add(new Course(lecture));
+			else
+				found.add(lecture);
+		}
+		return courses;
+	}
+
+	// Check the summaries and the number of the lectures of the courses in order
+	private static boolean sameCourses(ICalendar iCal, ArrayList<Course> courses) {
+		if (iCal.getContent().size() != courses.size())
+			return false;
+		for (int i = 0; i < courses.size(); i++) {
+			Course course = (Course) iCal.getContent().get(i);
+			if (!course.getSummary().equals(courses.get(i).getSummary())
+					|| course.getLectures().size() != courses.get(i).getLectures().size())
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,189 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+//Test of the time index with the contents changed after the time queries
+//The contents are got once by getEditable() and getEditableLecture() and changed
+//between the queries (the same as the edit loops of ICalEditor), and each step
+//compares the occurrences found by the time index and the cached busy grid with
+//the occurrences of every event of the calendar
+//Usage: HeldHandleTest
+//Exits with status 1 when any check fails
+public class HeldHandleTest {
+
+	private static final long HOUR = 3600000L;
+	private static final long DAY = ICSDateTime.MILLISECONDS_PER_DAY;
+	// 2021-03-01 00:00 UTC
+	private static final long START = ICSDateTime.epochDay(2021, 3, 1) * DAY;
+	private static final long FROM = START - 30 * DAY;
+	private static final long TO = START + 365 * DAY;
+	private static final int SLOTS = (int) ((TO - FROM) / BusyGrid.SLOT);
+
+	private static int failures;
+
+	public static void main(String[] args) {
+		ICalendar iCal = new ICalendar("Test");
+		iCal.add(normalEvent("Meeting", START + 9 * HOUR, 4));
+		iCal.add(lecture("CPS*2231*W01", START + 10 * HOUR, 10));
+		iCal.add(lecture("CPS*2231*W01", START + 2 * DAY + 10 * HOUR, 10));
+		check("built", iCal);
+
+		// Normal event kept after getEditable()
+		NormalEvent normalEvent = (NormalEvent) iCal.getEditable(0);
+		check("normal event got", iCal);
+		normalEvent.setDtStartMillis(normalEvent.getDtStartMillis() + 100 * HOUR);
+		normalEvent.setDtEndMillis(normalEvent.getDtEndMillis() + 100 * HOUR);
+		check("normal event moved", iCal);
+		if (iCal.getOccurrencesAt(START + 9 * HOUR).size() != 0)
+			fail("normal event moved", "found at the old time");
+		if (iCal.getOccurrencesAt(START + 109 * HOUR).size() != 1)
+			fail("normal event moved", "not found at the new time");
+		normalEvent.setDtStart(calendar(START + 60 * DAY));
+		normalEvent.setDtEnd(calendar(START + 60 * DAY + HOUR));
+		check("normal event moved by calendar", iCal);
+
+		// Repeat rule replaced and changed in place
+		normalEvent.setRRulr(weekly(START + 60 * DAY, HOUR, 8));
+		check("repeat rule replaced", iCal);
+		if (iCal.getOccurrencesAt(START + 74 * DAY).size() != 1)
+			fail("repeat rule replaced", "not found at the new time");
+		normalEvent.getRRule().addException(START + 67 * DAY);
+		check("exception added", iCal);
+		normalEvent.getRRule().setCount(2);
+		check("count changed", iCal);
+		normalEvent.setRRulr(null);
+		check("repeat rule removed", iCal);
+
+		// Course and lecture kept after getEditable() and getEditableLecture()
+		Course course = (Course) iCal.getEditable(1);
+		Lecture lecture = course.getEditableLecture(0);
+		check("lecture got", iCal);
+		lecture.setDtStartMillis(lecture.getDtStartMillis() + 100 * HOUR);
+		lecture.setDtEndMillis(lecture.getDtEndMillis() + 100 * HOUR);
+		check("lecture moved", iCal);
+		if (iCal.getOccurrencesAt(START + 110 * HOUR).size() != 1)
+			fail("lecture moved", "not found at the new time");
+		lecture.getRRule().setInterval(2);
+		check("lecture interval changed", iCal);
+		course.add(new Lecture("CPS*2231*W01", START + 4 * DAY + 10 * HOUR, START + 4 * DAY + 11 * HOUR,
+				ICSDateTime.UTC, weekly(START + 4 * DAY + 10 * HOUR, HOUR, 6), null, "W", "GEH", "C504"));
+		check("lecture added", iCal);
+		course.remove(1);
+		check("lecture removed", iCal);
+		course.setSummary("CPS*2231*W02");
+		check("course renamed", iCal);
+		for (Occurrence occurrence : iCal.getOccurrences(FROM, TO)) {
+			if (occurrence.getEvent() instanceof Lecture
+					&& !occurrence.getEvent().getSummary().equals("CPS*2231*W02"))
+				fail("course renamed", "occurrence of the old lecture " + occurrence);
+		}
+
+		// The clone shares the contents -> the changes of one calendar are not seen
+		// by the other
+		ICalendar clone = (ICalendar) iCal.clone();
+		check("clone", clone);
+		Course cloneCourse = (Course) clone.getEditable(1);
+		Lecture cloneLecture = cloneCourse.getEditableLecture(0);
+		check("clone lecture got", clone);
+		cloneLecture.setDtStartMillis(cloneLecture.getDtStartMillis() + DAY);
+		cloneLecture.setDtEndMillis(cloneLecture.getDtEndMillis() + DAY);
+		check("clone lecture moved", clone);
+		check("original after clone lecture moved", iCal);
+		NormalEvent cloneEvent = (NormalEvent) clone.getEditable(0);
+		cloneEvent.setDtStartMillis(cloneEvent.getDtStartMillis() + DAY);
+		cloneEvent.setDtEndMillis(cloneEvent.getDtEndMillis() + DAY);
+		check("clone event moved", clone);
+		check("original after clone event moved", iCal);
+		if (iCal.getContent().get(0) == cloneEvent)
+			fail("clone event moved", "the event is shared with the original");
+
+		// Removed contents do not change the calendar any more
+		NormalEvent removed = (NormalEvent) iCal.remove(0);
+		check("event removed", iCal);
+		removed.setDtStartMillis(START);
+		removed.setDtEndMillis(START + HOUR);
+		check("removed event changed", iCal);
+
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Check that the time index finds the same occurrences as the events and the
+	// busy grid marks the same slots
+	private static void check(String step, ICalendar iCal) {
+		List<Long> indexed = new ArrayList<>();
+		for (Occurrence occurrence : iCal.getOccurrences(FROM, TO)) {
+			indexed.add(occurrence.getStartMillis());
+			indexed.add(occurrence.getEndMillis());
+		}
+		List<Long> counted = new ArrayList<>();
+		for (CalContent calContent : iCal.getContent()) {
+			if (calContent instanceof Course) {
+				for (Lecture lecture : ((Course) calContent).getLectures())
+					addOccurrences(lecture, counted);
+			} else
+				addOccurrences((Event) calContent, counted);
+		}
+		Collections.sort(indexed);
+		Collections.sort(counted);
+		if (!indexed.equals(counted))
+			fail(step, indexed.size() / 2 + " occurrences in the time index differ from the " + counted.size() / 2
+					+ " of the events");
+
+		// The grid is kept by the calendar between the steps (the same range)
+		BusyGrid cached = iCal.getBusyGrid(FROM, SLOTS);
+		BusyGrid expected = new BusyGrid(FROM, SLOTS);
+		for (int i = 0; i < counted.size(); i += 2) {
+			expected.mark(counted.get(i), counted.get(i + 1));
+		}
+		for (int slot = 0; slot < SLOTS; slot++) {
+			if (cached.isBusy(slot) != expected.isBusy(slot)) {
+				fail(step, "the busy grid differs from the events at slot " + slot);
+				break;
+			}
+		}
+	}
+
+	private static void addOccurrences(Event event, List<Long> list) {
+		long duration = event.getDtEndMillis() - event.getDtStartMillis();
+		for (PrimitiveIterator.OfLong occurrences = event.occurrences(FROM, TO); occurrences.hasNext();) {
+			long start = occurrences.nextLong();
+			list.add(start);
+			list.add(start + duration);
+		}
+	}
+
+	private static void fail(String step, String message) {
+		System.out.println(step + ": " + message);
+		failures++;
+	}
+
+	private static NormalEvent normalEvent(String summary, long start, int weeks) {
+		NormalEvent normalEvent = new NormalEvent(summary, calendar(start), calendar(start + HOUR), null, null);
+		normalEvent.setRRulr(weekly(start, HOUR, weeks));
+		return normalEvent;
+	}
+
+	private static Lecture lecture(String summary, long start, int weeks) {
+		return new Lecture(summary, start, start + 5400000L, ICSDateTime.UTC, weekly(start, 5400000L, weeks), null, "W",
+				"GEH", "C504");
+	}
+
+	// The end time of the rule is set the same as ICSReader does (so the time
+	// index knows when the series ends)
+	private static RepeatRule weekly(long start, long duration, int weeks) {
+		RepeatRule rRule = new RepeatRule(RepeatRule.WEEKLY, Event.NO_TIME, ICSDateTime.UTC, 1);
+		rRule.setCount(weeks);
+		rRule.setEndDtMillis(OccurrenceIterator.lastOccurrence(rRule, start) + duration);
+		return rRule;
+	}
+
+	private static GregorianCalendar calendar(long time) {
+		return ICSDateTime.toGregorianCalendar(time, ICSDateTime.UTC);
+	}
+}
@@ -0,0 +1,55 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+
+//Benchmark of the parallel import of a generated KEANWISE-style ics file (the
+//file of ReadBenchmark) by ICalendar.readFromFile with 1, 2, 4 and 8 threads
+//Files under 1 MB are read by one thread whatever the parallelism
+//Each parallelism prints the best time of the rounds after the warm-up round,
+//and the export of every calendar is compared with the one read by one thread
+//Usage: ParallelReadBenchmark [events] [rounds]
+//Exits with status 1 when the calendars differ
+public class ParallelReadBenchmark {
+
+	private static final int[] PARALLELISMS = { 1, 2, 4, 8 };
+
+	public static void main(String[] args) throws IOException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File path = File.createTempFile("parallel-read-benchmark", ".ics");
+		int failures = 0;
+		try {
+			ReadBenchmark.generate(path, events);
+			double megabytes = path.length() / 1e6;
+			System.out.printf("%d events, %.1f MB, %d processors%n", events, megabytes,
+					Runtime.getRuntime().availableProcessors());
+			String sequential = null;
+			for (int parallelism : PARALLELISMS) {
+				long best = Long.MAX_VALUE;
+				ICalendar iCal = null;
+				for (int round = 0; round <= rounds; round++) {
+					long start = System.nanoTime();
+					iCal = ICalendar.readFromFile(path, parallelism);
+					long time = System.nanoTime() - start;
+					if (round > 0)
+						best = Math.min(best, time);
+				}
+				System.out.printf("Parallelism %d: %.0f ms (%.0f MB/s)%n", parallelism, best / 1e6,
+						megabytes / (best / 1e9));
+				String export = ReadBenchmark.normalize(iCal);
+				if (sequential == null)
+					sequential = export;
+				else if (!export.equals(sequential)) {
+					System.out.println("Parallelism " + parallelism + ": the calendar differs from the sequential read");
+					failures++;
+				}
+			}
+		} finally {
+			path.delete();
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,129 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Test of the parse cache with concurrent misses of the same file
+//Many threads (through one cache and through caches of their own on the same
+//directory, the same as several programs) import the same file at the same
+//time, then the calendars are compared with a read without the cache, and the
+//directory must have one complete cache file and no temporary files left
+//Usage: ParseCacheTest [threads] [rounds]
+//Exits with status 1 when any check fails
+public class ParseCacheTest {
+
+	private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+	private static final ZoneId SHANGHAI = ZoneId.of("Asia/Shanghai");
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		File directory = File.createTempFile("parse-cache", "");
+		if (!directory.delete() || !directory.mkdir())
+			throw new IOException("Cannot create the directory " + directory);
+		File path = new File(directory, "calendar.ics");
+		File cacheDirectory = new File(directory, "cache");
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			generate(path, 3000);
+			ICalendar iCal = ICalendar.read(path, 1, ICSDateTime.UTC);
+			iCal.rebase(NEW_YORK, SHANGHAI);
+			iCal.optimizeCourses();
+			String expected = normalize(iCal);
+
+			for (int round = 0; round < rounds; round++) {
+				// A new file content each round -> every thread misses at first
+				path.setLastModified(path.lastModified() + 1000);
+				ParseCache shared = new ParseCache(cacheDirectory, ParseCache.DEFAULT_MAX_BYTES);
+				List<Callable<String>> tasks = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					ParseCache cache = i % 2 == 0 ? shared
+							: new ParseCache(cacheDirectory, ParseCache.DEFAULT_MAX_BYTES);
+					tasks.add(() -> normalize(cache.readFromFile(path, 1, NEW_YORK, SHANGHAI)));
+				}
+				for (Future<String> result : pool.invokeAll(tasks)) {
+					try {
+						if (!expected.equals(result.get()))
+							fail("Round " + round + ": a concurrent import differs from the read without the cache");
+					} catch (ExecutionException e) {
+						fail("Round " + round + ": " + e.getCause());
+					}
+				}
+				// The cache file written last is complete
+				ParseCache reloaded = new ParseCache(cacheDirectory, ParseCache.DEFAULT_MAX_BYTES);
+				if (!expected.equals(normalize(reloaded.readFromFile(path, 1, NEW_YORK, SHANGHAI)))
+						|| reloaded.getHits() != 1)
+					fail("Round " + round + ": the cache file is not loaded");
+			}
+
+			File[] files = cacheDirectory.listFiles();
+			int cacheFiles = 0;
+			for (File file : files) {
+				if (file.getName().endsWith(".tmp"))
+					fail("Temporary file left: " + file.getName());
+				else
+					cacheFiles++;
+			}
+			// One cache file for each modification time
+			if (cacheFiles != rounds)
+				fail(cacheFiles + " cache files, expected " + rounds);
+		} finally {
+			pool.shutdown();
+			File[] files = cacheDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			cacheDirectory.delete();
+			path.delete();
+			directory.delete();
+		}
+
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static void fail(String message) {
+		System.out.println(message);
+		failures++;
+	}
+
+	// Export of the calendar without the parts that differ between two reads of
+	// the same file (the DTSTAMP and the hash code at the end of the UID)
+	private static String normalize(ICalendar iCal) {
+		return iCal.exportICSFormat().replaceAll("DTSTAMP:[0-9TZ]+", "DTSTAMP:")
+				.replaceAll("(UID:SimpleICalEditor-[0-9TZ]+-[0-9TZ]+)--?[0-9]+", "$1");
+	}
+
+	// Generate weekly lectures of some courses (one VEVENT for each lecture)
+	private static void generate(File path, int events) throws IOException {
+		try (PrintWriter output = new PrintWriter(path, StandardCharsets.UTF_8)) {
+			output.print("BEGIN:VCALENDAR\r\nPRODID:-//Cache//Test//EN\r\nVERSION:2.0\r\n");
+			for (int i = 0; i < events; i++) {
+				int course = i % 30;
+				int week = i / 30 % 15;
+				String date = String.format("2021%02d%02dT%02d0000Z", 1 + (course * 2 + week * 7) / 28 % 12,
+						1 + (course * 2 + week * 7) % 28, 13 + course % 8);
+				output.print("BEGIN:VEVENT\r\nSUMMARY:CPS*" + (2000 + course) + "*W01\r\n");
+				output.print("LOCATION:Location: W\\, Building:GEH\\, Room:C" + (500 + course) + "\r\n");
+				output.print("DTSTART:" + date + "\r\nDTEND:" + date.replace("0000Z", "5000Z") + "\r\n");
+				output.print("UID:cache-" + i + "\r\nEND:VEVENT\r\n");
+			}
+			output.print("END:VCALENDAR\r\n");
+		}
+	}
+}
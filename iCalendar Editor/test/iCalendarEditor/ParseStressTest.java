@@ -0,0 +1,165 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Stress test of the concurrent parsing
+//Generates a number of ics files (some larger than the parallel threshold of the
+//reader), reads each of them serially, then reads all of them at the same time on a
+//pool while another thread keeps changing the default time zone, and compares the
+//exported ics content of every concurrent read with the serial read
+//Usage: ParseStressTest [files] [threads] [rounds]
+//Exits with status 1 when any result differs
+public class ParseStressTest {
+
+	private static final String[] ZONES = { null, "America/New_York", "Asia/Shanghai", "\"Eastern Standard Time\"",
+			"Europe/London" };
+	private static final String[] RULES = { null, "FREQ=WEEKLY;COUNT=14", "FREQ=DAILY;INTERVAL=2;COUNT=30",
+			"FREQ=WEEKLY;BYDAY=MO,WE,FR;UNTIL=20210601T000000Z", "FREQ=MONTHLY;COUNT=6" };
+
+	public static void main(String[] args) throws Exception {
+		int files = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		File directory = createDirectory();
+		File[] paths = new File[files];
+		String[] expected = new String[files];
+		for (int i = 0; i < files; i++) {
+			// Every eighth file is large enough to be decoded in parallel
+			paths[i] = generate(directory, i, i % 8 == 7 ? 12000 : 200 + i * 37);
+			expected[i] = normalize(ICalendar.read(paths[i], 1, zoneOf(i)));
+		}
+		System.out.println("Generated and read " + files + " files serially");
+
+		// Change the default time zone meanwhile (the reading must not depend on it)
+		AtomicBoolean running = new AtomicBoolean(true);
+		TimeZone defaultZone = TimeZone.getDefault();
+		Thread changer = new Thread(() -> {
+			while (running.get()) {
+				TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+				TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+			}
+		});
+		changer.setDaemon(true);
+		changer.start();
+
+		int failures = 0;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (int round = 0; round < rounds; round++) {
+				List<Future<String>> results = new ArrayList<>(files);
+				for (int i = 0; i < files; i++) {
+					File path = paths[i];
+					TimeZone zone = zoneOf(i);
+					// Some of the large files are also decoded on threads of their own
+					int parallelism = i % 2 == 0 ? 1 : 4;
+					results.add(pool.submit(() -> normalize(ICalendar.read(path, parallelism, zone))));
+				}
+				for (int i = 0; i < files; i++) {
+					String actual;
+					try {
+						actual = results.get(i).get();
+					} catch (ExecutionException e) {
+						actual = e.getCause().toString();
+					}
+					if (!expected[i].equals(actual)) {
+						System.out.println("Round " + round + ": " + paths[i].getName() + " differs from the serial read");
+						failures++;
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+			running.set(false);
+			changer.join();
+			TimeZone.setDefault(defaultZone);
+			for (File path : paths) {
+				path.delete();
+			}
+			directory.delete();
+		}
+
+		System.out.println(rounds * files - failures + "/" + rounds * files + " concurrent reads are identical");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Time zone the file is read in
+	private static TimeZone zoneOf(int index) {
+		return TimeZone.getTimeZone(index % 3 == 0 ? "UTC" : index % 3 == 1 ? "Asia/Tokyo" : "America/Chicago");
+	}
+
+	// Export of the calendar without the parts that differ between two reads of
+	// the same file (the DTSTAMP and the hash code at the end of the UID)
+	private static String normalize(ICalendar iCal) {
+		return iCal.exportICSFormat().replaceAll("DTSTAMP:[0-9TZ]+", "DTSTAMP:")
+				.replaceAll("(UID:SimpleICalEditor-[0-9TZ]+-[0-9TZ]+)--?[0-9]+", "$1");
+	}
+
+	private static File createDirectory() throws IOException {
+		File directory = File.createTempFile("parse-stress", "");
+		if (!directory.delete() || !directory.mkdir())
+			throw new IOException("Cannot create the directory " + directory);
+		return directory;
+	}
+
+	// Generate a file of lectures (with the location format of the courses) and
+	// normal events with time zones, repeat rules, exceptions and alarms
+	private static File generate(File directory, int index, int events) throws IOException {
+		File path = new File(directory, "calendar" + index + ".ics");
+		Random random = new Random(index);
+		try (PrintWriter output = new PrintWriter(path, StandardCharsets.UTF_8)) {
+			output.print("BEGIN:VCALENDAR\r\nPRODID:-//Stress//Test//EN\r\nVERSION:2.0\r\n");
+			output.print("BEGIN:VTIMEZONE\r\nTZID:Eastern Standard Time\r\nEND:VTIMEZONE\r\n");
+			for (int i = 0; i < events; i++) {
+				int day = 1 + random.nextInt(28);
+				int month = 1 + random.nextInt(12);
+				int hour = 8 + random.nextInt(10);
+				String date = String.format("2021%02d%02dT%02d%02d00", month, day, hour, random.nextInt(4) * 15);
+				String end = String.format("2021%02d%02dT%02d%02d00", month, day, hour + 1, random.nextInt(4) * 15);
+				String zone = ZONES[random.nextInt(ZONES.length)];
+				String rule = RULES[random.nextInt(RULES.length)];
+				output.print("BEGIN:VEVENT\r\n");
+				if (random.nextInt(3) == 0) {
+					int course = random.nextInt(40);
+					output.print("SUMMARY:CPS*" + (2000 + course) + "*W0" + random.nextInt(3)
+							+ " COMPUTER ORGAN & \u00e9v\u00e9nement\r\n");
+					output.print("LOCATION:Location: W\\, Building:GEH\\, Room:C" + (500 + course % 7) + "\r\n");
+					zone = null;
+					rule = null;
+				} else {
+					output.print("SUMMARY:Event " + i + " of file " + index + "\\, with text\r\n");
+					output.print("DESCRIPTION:Line one\\nLine two; part " + random.nextInt(1000) + "\r\n");
+				}
+				if (zone == null) {
+					output.print("DTSTART:" + date + "Z\r\nDTEND:" + end + "Z\r\n");
+				} else {
+					output.print("DTSTART;TZID=" + zone + ":" + date + "\r\nDTEND;TZID=" + zone + ":" + end + "\r\n");
+				}
+				if (rule != null) {
+					output.print("RRULE:" + rule + "\r\n");
+					if (random.nextBoolean())
+						output.print("EXDATE:" + date.substring(0, 6) + String.format("%02d", day + 7 > 28 ? day : day + 7)
+								+ date.substring(8) + "Z\r\n");
+				}
+				if (random.nextInt(4) == 0)
+					output.print("BEGIN:VALARM\r\nACTION:DISPLAY\r\nTRIGGER:-PT" + (5 + random.nextInt(60))
+							+ "M\r\nEND:VALARM\r\n");
+				output.print("UID:stress-" + index + "-" + i + "\r\nEND:VEVENT\r\n");
+			}
+			output.print("END:VCALENDAR\r\n");
+		}
+		return path;
+	}
+}
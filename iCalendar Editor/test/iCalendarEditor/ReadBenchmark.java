@@ -0,0 +1,166 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.Scanner;
+
+//Benchmark of the import of a generated KEANWISE-style ics file (weekly lectures
+//of some courses, one VEVENT for each lecture): the memory-mapped reader of
+//ICalendar.readFromFile against the Scanner loop it replaced (kept here as the
+//baseline, for the properties of the generated file)
+//Each round reads the file by both, the best time of the rounds is printed
+//after the warm-up round, and the exports of the two calendars are compared
+//Usage: ReadBenchmark [events] [rounds]
+//(215000 events give a file of about 70 MB)
+//Exits with status 1 when the calendars differ
+public class ReadBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File path = File.createTempFile("read-benchmark", ".ics");
+		try {
+			generate(path, events);
+			double megabytes = path.length() / 1e6;
+			System.out.printf("%d events, %.1f MB%n", events, megabytes);
+			long mapped = Long.MAX_VALUE;
+			long scanner = Long.MAX_VALUE;
+			ICalendar mappedCalendar = null;
+			ICalendar scannerCalendar = null;
+			for (int round = 0; round <= rounds; round++) {
+				long start = System.nanoTime();
+				mappedCalendar = ICalendar.readFromFile(path);
+				long time = System.nanoTime() - start;
+				if (round > 0)
+					mapped = Math.min(mapped, time);
+				start = System.nanoTime();
+				scannerCalendar = readByScanner(path);
+				time = System.nanoTime() - start;
+				if (round > 0)
+					scanner = Math.min(scanner, time);
+			}
+			System.out.printf("Mapped reader: %.0f ms (%.0f MB/s)%n", mapped / 1e6, megabytes / (mapped / 1e9));
+			System.out.printf("Scanner loop: %.0f ms (%.0f MB/s)%n", scanner / 1e6, megabytes / (scanner / 1e9));
+			if (!normalize(mappedCalendar).equals(normalize(scannerCalendar))) {
+				System.out.println("The calendars of the two readers differ");
+				System.exit(1);
+			}
+		} finally {
+			path.delete();
+		}
+	}
+
+	// Generate weekly lectures of 60 courses on Monday, Wednesday and Friday (the
+	// odd courses not on Friday) from 2021-02-22, in the KEANWISE export format
+	static void generate(File path, int events) throws IOException {
+		final int COURSES = 60;
+		long base = ICSDateTime.epochDay(2021, 2, 22) * ICSDateTime.MILLISECONDS_PER_DAY + 13 * 3600000L
+				+ 30 * 60000L;
+		try (PrintWriter output = new PrintWriter(path, StandardCharsets.UTF_8)) {
+			output.print("BEGIN:VCALENDAR\r\nPRODID:-//KEANWISE//EN\r\nVERSION:2.0\r\n");
+			int number = 0;
+			for (int week = 0; number < events; week++) {
+				for (int course = 0; course < COURSES && number < events; course++) {
+					for (int day = 0; day <= 4 && number < events; day += 2) {
+						if (course % 2 == 1 && day == 4)
+							continue;
+						long start = base + (week * 7L + day) * ICSDateTime.MILLISECONDS_PER_DAY
+								+ course % 6 * 2 * 3600000L;
+						output.print("BEGIN:VEVENT\r\nCATEGORIES:CS\r\n");
+						output.print("DTEND:" + Event.formatTime(start + 105 * 60000L, ICSDateTime.UTC) + "\r\n");
+						output.print("DTSTAMP:20210515T151343\r\n");
+						output.print("DTSTART:" + Event.formatTime(start, ICSDateTime.UTC) + "\r\n");
+						output.print("LOCATION:Location: W\\, Building:GEH\\, Room:C" + (500 + course % 7) + "\r\n");
+						output.print("SEQUENCE:0\r\nSUMMARY:CPS*" + (2000 + course) + "*W01 COMPUTER ORGAN &\r\n");
+						output.print("UID:benchmark-" + number++ + "\r\nEND:VEVENT\r\n");
+					}
+				}
+			}
+			output.print("END:VCALENDAR\r\n");
+		}
+	}
+
+	// Export of the calendar without the parts that differ between two reads of
+	// the same file (the DTSTAMP and the hash code at the end of the UID)
+	static String normalize(ICalendar iCal) {
+		return iCal.exportICSFormat().replaceAll("DTSTAMP:[0-9TZ]+", "DTSTAMP:")
+				.replaceAll("(UID:SimpleICalEditor-[0-9TZ]+-[0-9TZ]+)--?[0-9]+", "$1");
+	}
+
+	// The Scanner loop of the earlier ICalendar.readFromFile: a String for every
+	// line, matched by startsWith, and a GregorianCalendar parsed by substrings for
+	// every time
+	private static ICalendar readByScanner(File path) throws IOException {
+		try (Scanner input = new Scanner(path)) {
+			if (!input.nextLine().equals("BEGIN:VCALENDAR") || !input.nextLine().startsWith("PRODID:")
+					|| !input.nextLine().equals("VERSION:2.0"))
+				throw new IOException("The file has incorrect format");
+			ICalendar iCal = new ICalendar(path);
+			String summary = null;
+			GregorianCalendar dtStart = null;
+			GregorianCalendar dtEnd = null;
+			String[] locations = new String[3];
+			ArrayList<String> ignored = new ArrayList<>();
+			while (input.hasNext()) {
+				String str = input.nextLine();
+				if (str.startsWith("DTEND:"))
+					dtEnd = getGregorianCalendar(str);
+				else if (str.startsWith("DTSTART:"))
+					dtStart = getGregorianCalendar(str);
+				else if (str.startsWith("LOCATION:"))
+					locations = readLocations(str);
+				else if (str.startsWith("SUMMARY:"))
+					summary = str.substring(str.indexOf(':') + 1);
+				else if (str.equals("END:VEVENT")) {
+					iCal.add(new Lecture(summary, dtStart, dtEnd, null, null, locations[0], locations[1],
+							locations[2]));
+					summary = null;
+					dtStart = null;
+					dtEnd = null;
+				} else if (str.startsWith("BEGIN:VEVENT") || str.startsWith("CATEGORIES:")
+						|| str.startsWith("DTSTAMP:") || str.startsWith("SEQUENCE:") || str.startsWith("UID:")
+						|| str.equals("END:VCALENDAR"))
+					ignored.add(str);
+				else
+					throw new IOException("Unsupported line: " + str);
+				ignored.clear();
+			}
+			return iCal;
+		}
+	}
+
+	// str example: DTEND:20210222T151500Z
+	private static GregorianCalendar getGregorianCalendar(String str) {
+		int startIndex = str.indexOf(':') + 1;
+		GregorianCalendar temp = new GregorianCalendar(ICSDateTime.UTC);
+		temp.clear();
+		temp.set(Integer.parseInt(str.substring(startIndex, startIndex + 4)),
+				Integer.parseInt(str.substring(startIndex + 4, startIndex + 6)) - 1,
+				Integer.parseInt(str.substring(startIndex + 6, startIndex + 8)));
+		if (str.length() >= startIndex + 9 && str.charAt(startIndex + 8) == 'T') {
+			temp.set(GregorianCalendar.HOUR_OF_DAY, Integer.parseInt(str.substring(startIndex + 9, startIndex + 11)));
+			temp.set(GregorianCalendar.MINUTE, Integer.parseInt(str.substring(startIndex + 11, startIndex + 13)));
+			temp.set(GregorianCalendar.SECOND, Integer.parseInt(str.substring(startIndex + 13, startIndex + 15)));
+		}
+		return temp;
+	}
+
+	// str example: LOCATION:Location: W\, Building:GEH\, Room:C504
+	private static String[] readLocations(String str) {
+		int startIndex = str.indexOf(':') + 1;
+		String[] temp = new String[3];
+		for (int i = 0; i < 3; i++) {
+			startIndex = str.indexOf(':', startIndex) + 1;
+			if (startIndex == 0)
+				break;
+			int endIndex = str.indexOf('\\', startIndex);
+			temp[i] = str.substring(startIndex, endIndex != -1 ? endIndex : str.length());
+		}
+		return temp;
+	}
+}
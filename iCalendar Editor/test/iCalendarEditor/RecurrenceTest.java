@@ -0,0 +1,279 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+//Test of the occurrences of the repeat rules read from ics files
+//Each case reads a small ics file and compares the starts of the occurrences with
+//the expected local times, then exports the calendar, reads the export again and
+//compares the occurrences once more, and the repeat rules which cannot be
+//expanded must be rejected by the import
+//The rules with a TZID start repeat in the local time of the zone across the DST
+//changes (also after rebasing the calendar to another zone)
+//Usage: RecurrenceTest
+//Exits with status 1 when any check fails
+public class RecurrenceTest {
+
+	private static final long HOUR = 3600000L;
+	private static final long DAY = ICSDateTime.MILLISECONDS_PER_DAY;
+	private static final long WEEK = 7 * DAY;
+	private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+	private static final DateTimeFormatter ICS_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+	private static int failures;
+
+	public static void main(String[] args) throws IOException {
+		checkExceptions();
+		checkDaysOfMonth();
+		checkRejected();
+		checkZones();
+
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// The exceptions remove the occurrences starting at them only
+	private static void checkExceptions() throws IOException {
+		// An all-day daily event: the exception of a day does not remove the day
+		// before it (which ends at the start of the exception)
+		long day = ICSDateTime.epochDay(2021, 3, 1) * DAY;
+		List<Long> expected = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			if (i != 2)
+				expected.add(day + i * DAY);
+		}
+		check("all-day exception", event("DTSTART;VALUE=DATE:20210301", "DTEND;VALUE=DATE:20210302",
+				"RRULE:FREQ=DAILY;COUNT=5", "EXDATE;VALUE=DATE:20210303"), expected);
+
+		// An exception at the end of an occurrence (written by the earlier versions
+		// for the combined lectures) removes that occurrence
+		long start = day + 13 * HOUR + 30 * 60000L;
+		expected = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			if (i != 3)
+				expected.add(start + i * WEEK);
+		}
+		check("exception at the end", event("DTSTART:20210301T133000Z", "DTEND:20210301T151500Z",
+				"RRULE:FREQ=WEEKLY;UNTIL=20210405T151500Z;INTERVAL=1", "EXDATE:20210322T151500Z"), expected);
+
+		// The combined lectures skip the weeks without a lecture (the exceptions are
+		// at the starts of the skipped weeks)
+		StringBuilder lectures = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			if (i == 2 || i == 3)
+				continue;
+			String date = ICSDateTime.formatter().append(new StringBuilder(), start + i * WEEK).toString();
+			String end = ICSDateTime.formatter().append(new StringBuilder(), start + i * WEEK + 105 * 60000L)
+					.toString();
+			lectures.append(event("SUMMARY:CPS*2231*W01", "DTSTART:" + date, "DTEND:" + end));
+		}
+		expected = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			if (i != 2 && i != 3)
+				expected.add(start + i * WEEK);
+		}
+		ICalendar iCal = read(lectures.toString());
+		iCal.optimizeCourses();
+		check("combined lectures", iCal, expected);
+		RepeatRule rRule = ((Course) iCal.getContent().get(0)).getLectures().get(0).getRRule();
+		if (rRule == null || !rRule.isException(start + 2 * WEEK) || !rRule.isException(start + 3 * WEEK))
+			fail("combined lectures", "the skipped weeks are not exceptions at their starts");
+	}
+
+	// The monthly and yearly rules on days of week of the month
+	private static void checkDaysOfMonth() throws IOException {
+		check("first Monday", event("DTSTART:20210301T090000Z", "DTEND:20210301T100000Z",
+				"RRULE:FREQ=MONTHLY;COUNT=4;BYDAY=1MO"),
+				times("20210301T090000Z", "20210405T090000Z", "20210503T090000Z", "20210607T090000Z"));
+		check("last Friday", event("DTSTART:20210326T090000Z", "DTEND:20210326T100000Z",
+				"RRULE:FREQ=MONTHLY;COUNT=3;BYDAY=-1FR"),
+				times("20210326T090000Z", "20210430T090000Z", "20210528T090000Z"));
+		// Every Monday of the month (the Monday of the month before DTSTART is not a
+		// occurrence)
+		check("every Monday", event("DTSTART:20210308T090000Z", "DTEND:20210308T100000Z",
+				"RRULE:FREQ=MONTHLY;UNTIL=20210430T000000Z;INTERVAL=1;BYDAY=MO"),
+				times("20210308T090000Z", "20210315T090000Z", "20210322T090000Z", "20210329T090000Z",
+						"20210405T090000Z", "20210412T090000Z", "20210419T090000Z", "20210426T090000Z"));
+		check("fourth Thursday of November", event("DTSTART:20211125T170000Z", "DTEND:20211125T200000Z",
+				"RRULE:FREQ=YEARLY;COUNT=3;BYMONTH=11;BYDAY=4TH"),
+				times("20211125T170000Z", "20221124T170000Z", "20231123T170000Z"));
+		// A month of BYMONTH before the month of DTSTART starts in the next period
+		check("yearly in an earlier month", event("DTSTART:20210315T090000Z", "DTEND:20210315T100000Z",
+				"RRULE:FREQ=YEARLY;COUNT=2;INTERVAL=2;BYMONTH=1"), times("20230115T090000Z", "20250115T090000Z"));
+		check("date of DTSTART", event("DTSTART:20210315T090000Z", "DTEND:20210315T100000Z",
+				"RRULE:FREQ=MONTHLY;COUNT=2;BYMONTHDAY=15;X-NAME=1"), times("20210315T090000Z", "20210415T090000Z"));
+
+		// The last occurrence of a long COUNT (computed from the count) is the same as
+		// the iteration, and every occurrence is on the days of the rule
+		RepeatRule rRule = new RepeatRule(RepeatRule.MONTHLY, Event.NO_TIME, ICSDateTime.UTC, 1);
+		rRule.setCount(500);
+		int[] nthDays = new int[7];
+		nthDays[1] = RepeatRule.ordinalBit(2);
+		nthDays[6] = RepeatRule.ordinalBit(-1);
+		rRule.setNthDays(nthDays);
+		long start = times("20210309T090000Z").get(0);
+		List<Long> expected = new ArrayList<>();
+		for (LocalDate month = LocalDate.of(2021, 3, 1); expected.size() < 500; month = month.plusMonths(1)) {
+			LocalDate second = month.with(TemporalAdjusters.dayOfWeekInMonth(2, DayOfWeek.TUESDAY));
+			LocalDate last = month.with(TemporalAdjusters.lastInMonth(DayOfWeek.SUNDAY));
+			for (LocalDate date : second.isBefore(last) ? List.of(second, last) : List.of(last, second)) {
+				long time = date.atTime(9, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+				if (time >= start && expected.size() < 500)
+					expected.add(time);
+			}
+		}
+		List<Long> starts = new ArrayList<>();
+		for (PrimitiveIterator.OfLong occurrences = new OccurrenceIterator(rRule, start, Long.MIN_VALUE / 2,
+				Long.MAX_VALUE / 2); occurrences.hasNext();)
+			starts.add(occurrences.nextLong());
+		if (!starts.equals(expected))
+			fail("long count", "the occurrences are not the second Tuesdays and the last Sundays");
+		if (OccurrenceIterator.lastOccurrence(rRule, start) != expected.get(expected.size() - 1))
+			fail("long count", "last occurrence " + OccurrenceIterator.lastOccurrence(rRule, start) + ", expected "
+					+ expected.get(expected.size() - 1));
+	}
+
+	// The rules which would be expanded to other occurrences are rejected
+	private static void checkRejected() {
+		String[] rules = { "FREQ=HOURLY;COUNT=3", "FREQ=MONTHLY;BYDAY=MO,TU;BYSETPOS=-1", "FREQ=WEEKLY;BYDAY=1MO",
+				"FREQ=YEARLY;BYDAY=1MO", "FREQ=MONTHLY;BYDAY=6MO", "FREQ=MONTHLY;BYMONTH=3",
+				"FREQ=MONTHLY;BYMONTHDAY=1,15", "FREQ=MONTHLY;BYMONTHDAY=16", "FREQ=MONTHLY;BYDAY=MO;BYMONTHDAY=15",
+				"FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,SU;WKST=SU", "FREQ=DAILY;BYHOUR=9,17" };
+		for (String rule : rules) {
+			try {
+				read(event("DTSTART:20210315T090000Z", "DTEND:20210315T100000Z", "RRULE:" + rule));
+				fail("rejected", "RRULE:" + rule + " is imported");
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	// The rules of a DTSTART with TZID repeat in the local time of the zone
+	private static void checkZones() throws IOException {
+		// 09:00 in New York every Monday and Friday across the start of the DST
+		// (2021-03-14), one of them an exception
+		List<Long> expected = new ArrayList<>();
+		for (LocalDate date = LocalDate.of(2021, 3, 1); date.isBefore(LocalDate.of(2021, 4, 1)); date = date
+				.plusDays(1)) {
+			if ((date.getDayOfWeek() == DayOfWeek.MONDAY || date.getDayOfWeek() == DayOfWeek.FRIDAY)
+					&& !date.equals(LocalDate.of(2021, 3, 15)))
+				expected.add(date.atTime(9, 0).atZone(NEW_YORK).toInstant().toEpochMilli());
+		}
+		String events = event("DTSTART;TZID=America/New_York:20210301T090000",
+				"DTEND;TZID=America/New_York:20210301T100000",
+				"RRULE:FREQ=WEEKLY;UNTIL=20210401T000000Z;BYDAY=MO,FR",
+				"EXDATE;TZID=America/New_York:20210315T090000");
+		check("New York weekly", events, expected);
+		// The same zone by its Windows name (the export uses the IANA id)
+		check("Windows zone name", events.replace("America/New_York", "Eastern Standard Time"), expected);
+
+		// The days of week are those of the local time (Friday 21:00 in New York is
+		// Saturday in UTC)
+		expected = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			expected.add(LocalDate.of(2021, 3, 5).plusWeeks(i).atTime(21, 0).atZone(NEW_YORK).toInstant()
+					.toEpochMilli());
+		}
+		check("local day of week", event("DTSTART;TZID=America/New_York:20210305T210000",
+				"DTEND;TZID=America/New_York:20210305T220000", "RRULE:FREQ=WEEKLY;COUNT=4;BYDAY=FR"), expected);
+
+		// The last Sunday of the month at 01:30 in London across the start of the DST
+		// (2021-03-28 01:30 is in the gap -> 02:30)
+		ZoneId london = ZoneId.of("Europe/London");
+		check("London last Sunday", event("DTSTART;TZID=Europe/London:20210131T013000",
+				"DTEND;TZID=Europe/London:20210131T023000", "RRULE:FREQ=MONTHLY;COUNT=4;BYDAY=-1SU"),
+				List.of(LocalDateTime.of(2021, 1, 31, 1, 30).atZone(london).toInstant().toEpochMilli(),
+						LocalDateTime.of(2021, 2, 28, 1, 30).atZone(london).toInstant().toEpochMilli(),
+						LocalDateTime.of(2021, 3, 28, 2, 30).atZone(london).toInstant().toEpochMilli(),
+						LocalDateTime.of(2021, 4, 25, 1, 30).atZone(london).toInstant().toEpochMilli()));
+
+		// Rebased from New York to London -> 09:00 in London across both DST changes
+		ICalendar iCal = read(event("DTSTART;TZID=America/New_York:20210301T090000",
+				"DTEND;TZID=America/New_York:20210301T100000", "RRULE:FREQ=WEEKLY;COUNT=6"));
+		iCal.rebase(NEW_YORK, london);
+		expected = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			expected.add(LocalDate.of(2021, 3, 1).plusWeeks(i).atTime(9, 0).atZone(london).toInstant()
+					.toEpochMilli());
+		}
+		check("rebased", iCal, expected);
+	}
+
+	// Read the events and check the occurrences, then the occurrences of the export
+	private static void check(String name, String events, List<Long> expected) throws IOException {
+		check(name, read(events), expected);
+	}
+
+	private static void check(String name, ICalendar iCal, List<Long> expected) throws IOException {
+		List<Long> starts = starts(iCal);
+		if (!starts.equals(expected))
+			fail(name, "occurrences " + starts + ", expected " + expected);
+		String export = iCal.exportICSFormat();
+		List<Long> exported = starts(read(export.substring(export.indexOf("BEGIN:VEVENT"),
+				export.lastIndexOf("END:VCALENDAR"))));
+		if (!exported.equals(expected))
+			fail(name, "occurrences of the export " + exported + ", expected " + expected);
+	}
+
+	private static List<Long> starts(ICalendar iCal) {
+		List<Long> starts = new ArrayList<>();
+		for (Occurrence occurrence : iCal.getOccurrences(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2)) {
+			starts.add(occurrence.getStartMillis());
+		}
+		return starts;
+	}
+
+	// The epoch milliseconds of the UTC times in the ics format
+	private static List<Long> times(String... values) {
+		List<Long> times = new ArrayList<>();
+		for (String value : values) {
+			times.add(LocalDateTime.parse(value, ICS_TIME).toInstant(ZoneOffset.UTC).toEpochMilli());
+		}
+		return times;
+	}
+
+	// A VEVENT of the lines (with the summary when not given)
+	private static String event(String... lines) {
+		StringBuilder temp = new StringBuilder("BEGIN:VEVENT\r\n");
+		if (!lines[0].startsWith("SUMMARY"))
+			temp.append("SUMMARY:Event\r\n");
+		for (String line : lines) {
+			temp.append(line).append("\r\n");
+		}
+		return temp.append("END:VEVENT\r\n").toString();
+	}
+
+	// Read the events through a temporary ics file
+	private static ICalendar read(String events) throws IOException {
+		File path = File.createTempFile("recurrence", ".ics");
+		try {
+			try (PrintWriter output = new PrintWriter(path, StandardCharsets.UTF_8)) {
+				output.print("BEGIN:VCALENDAR\r\nPRODID:-//Recurrence//Test//EN\r\nVERSION:2.0\r\n");
+				output.print(events);
+				output.print("END:VCALENDAR\r\n");
+			}
+			return ICalendar.read(path, 1, ICSDateTime.UTC);
+		} finally {
+			path.delete();
+		}
+	}
+
+	private static void fail(String name, String message) {
+		System.out.println(name + ": " + message);
+		failures++;
+	}
+}
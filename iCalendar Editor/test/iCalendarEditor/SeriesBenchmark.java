@@ -0,0 +1,124 @@
+package iCalendarEditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Benchmark of Course.optimize (the lectures combined into weekly series by
+//SeriesBuilder) for a course of n lectures making series of 5 lectures, n
+//doubling from 2500 to 40000
+//Up to the baseline limit the earlier Course.optimize is timed as well (each
+//lecture compared with every earlier lecture, the combined lectures removed
+//from the list), and both are checked to give the same lectures
+//Each size prints the best time of the rounds after the warm-up round
+//Usage: SeriesBenchmark [rounds] [baseline limit]
+//Exits with status 1 when the lectures differ
+public class SeriesBenchmark {
+
+	private static final long WEEK = 7 * ICSDateTime.MILLISECONDS_PER_DAY;
+	// 2021-02-22 08:00 UTC
+	private static final long START = ICSDateTime.epochDay(2021, 2, 22) * ICSDateTime.MILLISECONDS_PER_DAY
+			+ 8 * 3600000L;
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int baselineLimit = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+		int failures = 0;
+		for (int n = 2500; n <= 40000; n *= 2) {
+			long best = Long.MAX_VALUE;
+			Course course = null;
+			for (int round = 0; round <= rounds; round++) {
+				course = new Course("S", lectures(n));
+				long start = System.nanoTime();
+				course.optimize();
+				long time = System.nanoTime() - start;
+				if (round > 0)
+					best = Math.min(best, time);
+			}
+			System.out.printf("%d lectures -> %d series: %.0f ms", n, course.getLectures().size(), best / 1e6);
+			if (n > baselineLimit) {
+				System.out.println();
+				continue;
+			}
+			best = Long.MAX_VALUE;
+			ArrayList<Lecture> lectures = null;
+			for (int round = 0; round <= rounds; round++) {
+				lectures = lectures(n);
+				long start = System.nanoTime();
+				optimizeByPairs(lectures);
+				long time = System.nanoTime() - start;
+				if (round > 0)
+					best = Math.min(best, time);
+			}
+			System.out.printf(", pairwise %.0f ms%n", best / 1e6);
+			if (!export(course.getLectures()).equals(export(lectures))) {
+				System.out.println(n + " lectures: the series differ from the pairwise optimization");
+				failures++;
+			}
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// n lectures of 90 minutes, 50 a week at different hours, in n/5 rooms (a
+	// series of 5 lectures for each room and hour)
+	private static ArrayList<Lecture> lectures(int n) {
+		ArrayList<Lecture> lectures = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			long start = START + (i / 50) * WEEK + (i % 50) * 3600000L;
+			lectures.add(new Lecture("S", start, start + 5400000L, ICSDateTime.UTC, null, null, "W", "GEH",
+					"R" + i % (n / 5)));
+		}
+		return lectures;
+	}
+
+	// The earlier Course.optimize: each lecture without repeat rule extends the
+	// first earlier series it is basicly equal to (removed from the list) or
+	// becomes a new series
+	private static void optimizeByPairs(ArrayList<Lecture> lectures) {
+		Collections.sort(lectures);
+		for (int i = 0; i < lectures.size(); i++) {
+			if (lectures.get(i).getRRule() == null) {
+				boolean flag = true;
+				for (int j = 0; j < i; j++) {
+					if (extend(lectures, lectures.get(j), lectures.get(i))) {
+						i--;
+						flag = false;
+						break;
+					}
+				}
+				if (flag) {
+					lectures.get(i).setRRulr(new RepeatRule(RepeatRule.WEEKLY, lectures.get(i).getDtEndMillis(),
+							lectures.get(i).getZone(), 1));
+					lectures.get(i).setAlarm(new Alarm(30, lectures.get(i).getSummary()));
+				}
+			}
+		}
+	}
+
+	// Extend the weekly series by the lecture, adding the skipped weeks as
+	// exceptions (at the same weeks as SeriesBuilder)
+	private static boolean extend(ArrayList<Lecture> lectures, Lecture series, Lecture lecture) {
+		RepeatRule rRule = series.getRRule();
+		if (rRule.getFrequency() != RepeatRule.WEEKLY || rRule.getInterval() != 1 || rRule.getByDay() != 0
+				|| rRule.getEndDtMillis() == Event.NO_TIME || rRule.getLocalZone() != null
+				|| !series.basiclyEqualTo(lecture))
+			return false;
+		long start = series.getDtStartMillis();
+		long temp = start + (Math.floorDiv(rRule.getEndDtMillis() - start, WEEK) + 1) * WEEK;
+		rRule.setEndDtMillis(lecture.getDtEndMillis());
+		series.combineDescription(lecture);
+		lectures.remove(lecture);
+		rRule.addExceptions(temp, lecture.getDtStartMillis(), WEEK);
+		return true;
+	}
+
+	// Export of the lectures without the DTSTAMP and the UID
+	private static String export(List<Lecture> lectures) {
+		StringBuilder builder = new StringBuilder();
+		for (Lecture lecture : lectures)
+			builder.append(lecture.exportICSFormat().replaceAll("(?m)^(DTSTAMP|UID):.*\r?\n", ""));
+		return builder.toString();
+	}
+}
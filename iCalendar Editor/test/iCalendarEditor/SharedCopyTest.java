@@ -0,0 +1,190 @@
+package iCalendarEditor;
+
+import java.util.GregorianCalendar;
+import java.util.PrimitiveIterator;
+
+//Test of the shared copies (copy and paste, clone, mergence) with the time index
+//Each step compares the occurrences found by the time index of the calendar with
+//the occurrences of every event of every content counted one by one
+//Usage: SharedCopyTest
+//Exits with status 1 when any check fails
+public class SharedCopyTest {
+
+	private static final long DAY = ICSDateTime.MILLISECONDS_PER_DAY;
+	// 2021-03-01 00:00 UTC
+	private static final long START = ICSDateTime.epochDay(2021, 3, 1) * DAY;
+	private static final long FROM = START - 30 * DAY;
+	private static final long TO = START + 365 * DAY;
+
+	private static int failures;
+
+	public static void main(String[] args) {
+		ICalendar iCal = new ICalendar("Test");
+		iCal.add(normalEvent("Meeting", START + 9 * 3600000L, 3600000L, 4));
+		iCal.add(lecture("CPS*2231*W01", START + 10 * 3600000L, 10));
+		iCal.add(lecture("CPS*2231*W01", START + 2 * DAY + 10 * 3600000L, 10));
+		// The time index is built by the first query
+		check("built", iCal, 2, 24);
+
+		// Paste the normal event into its own calendar twice (the same as the editor)
+		iCal.getContent().get(0).copy();
+		iCal.add(CalContent.CLIPBOARD[0].sharedCopy());
+		check("paste once", iCal, 3, 28);
+		iCal.add(CalContent.CLIPBOARD[0].sharedCopy());
+		check("paste twice", iCal, 4, 32);
+
+		// Paste the course into its own calendar (the lectures are shared)
+		iCal.getContent().get(1).copy();
+		iCal.add(CalContent.CLIPBOARD[0].sharedCopy());
+		check("paste course", iCal, 5, 52);
+
+		// Remove the original event -> the pasted copies are kept
+		iCal.remove(0);
+		check("remove original", iCal, 4, 48);
+
+		// Change a pasted copy -> the other copy is not changed
+		NormalEvent copy = (NormalEvent) iCal.getEditable(1);
+		copy.setDtStartMillis(copy.getDtStartMillis() + DAY);
+		copy.setDtEndMillis(copy.getDtEndMillis() + DAY);
+		check("edit copy", iCal, 4, 48);
+		NormalEvent other = (NormalEvent) iCal.getContent().get(2);
+		if (other.getDtStartMillis() != START + 9 * 3600000L)
+			fail("edit copy", "the other copy is changed");
+
+		// Change a lecture of the pasted course -> the original course is not changed
+		Course pasted = (Course) iCal.getEditable(3);
+		Lecture lecture = pasted.getEditableLecture(0);
+		lecture.setDtStartMillis(lecture.getDtStartMillis() + DAY);
+		lecture.setDtEndMillis(lecture.getDtEndMillis() + DAY);
+		check("edit pasted course", iCal, 4, 48);
+		Course original = (Course) iCal.getContent().get(0);
+		if (original.getLectures().get(0).getDtStartMillis() != START + 10 * 3600000L)
+			fail("edit pasted course", "the original course is changed");
+
+		// Merge the calendar with itself
+		ICalendar mergence = ICalendar.mergenceOf(iCal, iCal);
+		check("self mergence", mergence, 8, 96);
+		mergence.remove(0);
+		check("self mergence remove", mergence, 7, 76);
+		check("after mergence", iCal, 4, 48);
+
+		// Clone and change the clone only
+		ICalendar clone = (ICalendar) iCal.clone();
+		clone.remove(1);
+		check("clone remove", clone, 3, 44);
+		check("after clone", iCal, 4, 48);
+
+		// The pasted copy has a repeat rule and an alarm of its own
+		NormalEvent pastedEvent = (NormalEvent) iCal.getContent().get(2);
+		pastedEvent.copy();
+		NormalEvent pastedAgain = (NormalEvent) CalContent.CLIPBOARD[0].sharedCopy();
+		iCal.add(pastedAgain);
+		if (pastedAgain.getRRule() == pastedEvent.getRRule() || pastedAgain.getAlarm() == pastedEvent.getAlarm())
+			fail("paste rule", "the repeat rule or the alarm is shared with the original");
+		// The rule tells the calendar of the copy when changed
+		((NormalEvent) iCal.getEditable(4)).getRRule().setCount(2);
+		check("paste rule changed", iCal, 5, 50);
+		if (pastedEvent.getRRule().getCount() != 4)
+			fail("paste rule changed", "the rule of the original is changed");
+		iCal.remove(4);
+
+		// Each calendar copies a shared event once, then changes its copy in place,
+		// and the last calendar holding the original changes it in place
+		ICalendar base = new ICalendar("Base");
+		base.add(lecture("CPS*2231*W01", START + 10 * 3600000L, 10));
+		base.add(normalEvent("Meeting", START + 9 * 3600000L, 3600000L, 4));
+		check("base", base, 2, 14);
+		ICalendar owner = (ICalendar) base.clone();
+		NormalEvent ownerEvent = (NormalEvent) owner.getEditable(1);
+		NormalEvent originalEvent = (NormalEvent) base.getContent().get(1);
+		if (ownerEvent == originalEvent)
+			fail("clone owner", "the event shared with the original is changed in place");
+		if (owner.getEditable(1) != ownerEvent)
+			fail("clone owner", "the copy of the clone is copied again");
+		if (base.getEditable(1) != originalEvent)
+			fail("clone owner", "the event held by the original only is copied");
+		Lecture ownerLecture = ((Course) owner.getEditable(0)).getEditableLecture(0);
+		Lecture originalLecture = ((Course) base.getContent().get(0)).getLectures().get(0);
+		if (ownerLecture == originalLecture)
+			fail("clone owner", "the lecture shared with the original is changed in place");
+		if (((Course) owner.getEditable(0)).getEditableLecture(0) != ownerLecture)
+			fail("clone owner", "the lecture copy of the clone is copied again");
+		if (((Course) base.getEditable(0)).getEditableLecture(0) != originalLecture)
+			fail("clone owner", "the lecture held by the original only is copied");
+		ownerEvent.setDtStartMillis(ownerEvent.getDtStartMillis() + DAY);
+		ownerEvent.setDtEndMillis(ownerEvent.getDtEndMillis() + DAY);
+		ownerLecture.setDtStartMillis(ownerLecture.getDtStartMillis() + DAY);
+		ownerLecture.setDtEndMillis(ownerLecture.getDtEndMillis() + DAY);
+		check("clone owner changed", owner, 2, 14);
+		originalEvent.setDtStartMillis(originalEvent.getDtStartMillis() + 2 * DAY);
+		originalEvent.setDtEndMillis(originalEvent.getDtEndMillis() + 2 * DAY);
+		originalLecture.setDtStartMillis(originalLecture.getDtStartMillis() + 2 * DAY);
+		originalLecture.setDtEndMillis(originalLecture.getDtEndMillis() + 2 * DAY);
+		check("original changed", base, 2, 14);
+		check("clone owner after original changed", owner, 2, 14);
+		if (ownerEvent.getDtStartMillis() != START + DAY + 9 * 3600000L
+				|| ownerLecture.getDtStartMillis() != START + DAY + 10 * 3600000L)
+			fail("original changed", "the clone is changed");
+
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Check the number of the contents and the occurrences in the time window
+	// (found by the time index and counted event by event)
+	private static void check(String step, ICalendar iCal, int contents, int occurrences) {
+		int indexed = iCal.getOccurrences(FROM, TO).size();
+		int counted = 0;
+		for (CalContent calContent : iCal.getContent()) {
+			if (calContent instanceof Course) {
+				for (Lecture lecture : ((Course) calContent).getLectures())
+					counted += count(lecture);
+			} else
+				counted += count((Event) calContent);
+		}
+		if (iCal.getContent().size() != contents)
+			fail(step, iCal.getContent().size() + " contents, expected " + contents);
+		if (counted != occurrences)
+			fail(step, counted + " occurrences counted, expected " + occurrences);
+		if (indexed != counted)
+			fail(step, indexed + " occurrences in the time index, " + counted + " counted");
+	}
+
+	private static int count(Event event) {
+		int count = 0;
+		for (PrimitiveIterator.OfLong occurrences = event.occurrences(FROM, TO); occurrences.hasNext();) {
+			occurrences.nextLong();
+			count++;
+		}
+		return count;
+	}
+
+	private static void fail(String step, String message) {
+		System.out.println(step + ": " + message);
+		failures++;
+	}
+
+	private static NormalEvent normalEvent(String summary, long start, long duration, int weeks) {
+		NormalEvent normalEvent = new NormalEvent(summary, calendar(start), calendar(start + duration), null, null);
+		normalEvent.setRRulr(weekly(start, weeks));
+		normalEvent.setLocation("Room 1");
+		normalEvent.setAlarm(new Alarm());
+		return normalEvent;
+	}
+
+	private static Lecture lecture(String summary, long start, int weeks) {
+		return new Lecture(summary, start, start + 5400000L, ICSDateTime.UTC, weekly(start, weeks), null, "W", "GEH",
+				"C504");
+	}
+
+	private static RepeatRule weekly(long start, int weeks) {
+		RepeatRule rRule = new RepeatRule(RepeatRule.WEEKLY, Event.NO_TIME, ICSDateTime.UTC, 1);
+		rRule.setCount(weeks);
+		return rRule;
+	}
+
+	private static GregorianCalendar calendar(long time) {
+		return ICSDateTime.toGregorianCalendar(time, ICSDateTime.UTC);
+	}
+}
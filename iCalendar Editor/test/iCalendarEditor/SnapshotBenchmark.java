@@ -0,0 +1,73 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+//Benchmark of the calendar snapshot against the ics file for a calendar of the
+//lectures of a generated KEANWISE-style ics file (the file of ReadBenchmark)
+//Each round writes and loads the calendar by CalendarSnapshot and by the ics
+//export, the sizes and the best times of the rounds after the warm-up round are
+//printed, and the loaded calendars are compared with the original
+//Usage: SnapshotBenchmark [events] [rounds]
+//Exits with status 1 when a loaded calendar differs
+public class SnapshotBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File source = File.createTempFile("snapshot-benchmark", ".ics");
+		File snapshot = File.createTempFile("snapshot-benchmark", ".icsnap");
+		File ics = File.createTempFile("snapshot-benchmark", ".ics");
+		int failures = 0;
+		try {
+			ReadBenchmark.generate(source, events);
+			ICalendar iCal = ICalendar.readFromFile(source);
+			String original = ReadBenchmark.normalize(iCal);
+			long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+			ICalendar fromSnapshot = null;
+			ICalendar fromICS = null;
+			for (int round = 0; round <= rounds; round++) {
+				long[] times = new long[4];
+				times[0] = System.nanoTime();
+				CalendarSnapshot.write(iCal, snapshot);
+				times[0] = System.nanoTime() - times[0];
+				times[1] = System.nanoTime();
+				fromSnapshot = CalendarSnapshot.read(snapshot);
+				times[1] = System.nanoTime() - times[1];
+				times[2] = System.nanoTime();
+				try (PrintWriter output = new PrintWriter(ics)) {
+					iCal.exportToFile(output);
+				}
+				times[2] = System.nanoTime() - times[2];
+				times[3] = System.nanoTime();
+				fromICS = ICalendar.readFromFile(ics);
+				times[3] = System.nanoTime() - times[3];
+				if (round > 0)
+					for (int i = 0; i < 4; i++)
+						best[i] = Math.min(best[i], times[i]);
+			}
+			System.out.printf("%d events%n", events);
+			System.out.printf("Snapshot: %.1f MB, write %.0f ms, load %.0f ms%n", snapshot.length() / 1e6,
+					best[0] / 1e6, best[1] / 1e6);
+			System.out.printf("ics: %.1f MB, write %.0f ms, load %.0f ms%n", ics.length() / 1e6, best[2] / 1e6,
+					best[3] / 1e6);
+			if (!ReadBenchmark.normalize(fromSnapshot).equals(original)
+					|| !fromSnapshot.getName().equals(iCal.getName())) {
+				System.out.println("The calendar loaded from the snapshot differs");
+				failures++;
+			}
+			if (!ReadBenchmark.normalize(fromICS).equals(original)) {
+				System.out.println("The calendar loaded from the ics file differs");
+				failures++;
+			}
+		} finally {
+			source.delete();
+			snapshot.delete();
+			ics.delete();
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,226 @@
+package iCalendarEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.LongUnaryOperator;
+
+//Correctness test of the rebasing of the times by the rules of the time zones
+//1. For every time zone known by Java and every transition of it from the first
+//   year to the last year, compares the offsets, the instants of the local times
+//   and the conversions to and from America/New_York of ZoneOffsetTable at times
+//   around the transition with java.time
+//2. Imports a generated ics file of lectures through ParseCache (the same as
+//   ICalEditor, from America/New_York to each of some zones) and compares the
+//   local time of every occurrence with the local time of the lecture in the file
+//Usage: ZoneRebaseTest [first year] [last year]
+//Exits with status 1 when any check fails
+public class ZoneRebaseTest {
+
+	private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+	private static final long MINUTE = 60000L;
+	private static final long HOUR = 60 * MINUTE;
+	private static final long DAY = ICSDateTime.MILLISECONDS_PER_DAY;
+	// Distances from the transitions the times are checked at
+	private static final long[] DISTANCES = { -DAY, -3 * HOUR, -2 * HOUR, -HOUR, -30 * MINUTE, -1, 0, 1, 30 * MINUTE,
+			HOUR, 2 * HOUR, 3 * HOUR, DAY };
+	// Zones the ics file is imported to
+	private static final String[] IMPORT_ZONES = { "America/New_York", "Asia/Shanghai", "Europe/London",
+			"Australia/Sydney", "America/Los_Angeles", "Asia/Kolkata", "America/Sao_Paulo" };
+	private static final DateTimeFormatter ICS_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+	private static long checks;
+	private static long failures;
+
+	public static void main(String[] args) throws IOException {
+		int firstYear = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int lastYear = args.length > 1 ? Integer.parseInt(args[1]) : 2040;
+
+		long from = LocalDate.of(firstYear, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		long to = LocalDate.of(lastYear + 1, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		List<String> zones = new ArrayList<>(ZoneId.getAvailableZoneIds());
+		Collections.sort(zones);
+		List<Long> newYorkTransitions = transitions(NEW_YORK.getRules(), from, to);
+		int transitionCount = 0;
+		for (String id : zones) {
+			ZoneId zone = ZoneId.of(id);
+			List<Long> zoneTransitions = transitions(zone.getRules(), from, to);
+			transitionCount += zoneTransitions.size();
+			checkZone(zone, zoneTransitions, newYorkTransitions);
+		}
+		System.out.println(zones.size() + " zones, " + transitionCount + " transitions from " + firstYear + " to "
+				+ lastYear + ": " + checks + " checks");
+
+		long tableChecks = checks;
+		checkImport();
+		System.out.println(IMPORT_ZONES.length + " imports: " + (checks - tableChecks) + " checks");
+
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Instants of the transitions of the rules in [from, to)
+	private static List<Long> transitions(ZoneRules rules, long from, long to) {
+		List<Long> temp = new ArrayList<>();
+		ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(from - 1));
+		while (transition != null && transition.getInstant().toEpochMilli() < to) {
+			temp.add(transition.getInstant().toEpochMilli());
+			transition = rules.nextTransition(transition.getInstant());
+		}
+		return temp;
+	}
+
+	// Compare the table of the zone and the converters between the zone and New
+	// York with java.time around the transitions of both zones
+	private static void checkZone(ZoneId zone, List<Long> zoneTransitions, List<Long> newYorkTransitions) {
+		ZoneOffsetTable table = ZoneOffsetTable.of(zone);
+		ZoneRules rules = zone.getRules();
+		LongUnaryOperator toNewYork = ZoneOffsetTable.converter(zone, NEW_YORK);
+		LongUnaryOperator fromNewYork = ZoneOffsetTable.converter(NEW_YORK, zone);
+		for (long transition : zoneTransitions) {
+			ZoneOffsetTransition info = rules.nextTransition(Instant.ofEpochMilli(transition - 1));
+			long before = info.getOffsetBefore().getTotalSeconds() * 1000L;
+			long after = info.getOffsetAfter().getTotalSeconds() * 1000L;
+			for (long distance : DISTANCES) {
+				long time = transition + distance;
+				expect(zone, "offsetAt", time, rules.getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L,
+						table.offsetAt(time));
+				// Local times around both sides of the gap or overlap
+				expect(zone, "toInstant", time + before, instantOf(time + before, zone), table.toInstant(time + before));
+				expect(zone, "toInstant", time + after, instantOf(time + after, zone), table.toInstant(time + after));
+				expect(zone, "to New York", time, convert(time, zone, NEW_YORK), toNewYork.applyAsLong(time));
+				expect(zone, "from New York", time, convert(time, NEW_YORK, zone), fromNewYork.applyAsLong(time));
+			}
+		}
+		for (long transition : newYorkTransitions) {
+			for (long distance : DISTANCES) {
+				long time = transition + distance;
+				expect(zone, "to New York", time, convert(time, zone, NEW_YORK), toNewYork.applyAsLong(time));
+				expect(zone, "from New York", time, convert(time, NEW_YORK, zone), fromNewYork.applyAsLong(time));
+			}
+		}
+	}
+
+	// Instant of the local time (local milliseconds since 1970-01-01T00:00) by
+	// java.time
+	private static long instantOf(long local, ZoneId zone) {
+		return ZonedDateTime.ofLocal(localOf(local), zone, null).toInstant().toEpochMilli();
+	}
+
+	// The same local time of the instant in src, in dest, by java.time
+	private static long convert(long time, ZoneId src, ZoneId dest) {
+		LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), src);
+		return ZonedDateTime.ofLocal(local, dest, null).toInstant().toEpochMilli();
+	}
+
+	private static LocalDateTime localOf(long local) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(local, 1000), Math.floorMod(local, 1000) * 1000000,
+				ZoneOffset.UTC);
+	}
+
+	private static void expect(ZoneId zone, String what, long time, long expected, long actual) {
+		checks++;
+		if (expected != actual) {
+			failures++;
+			if (failures <= 20)
+				System.out.println(zone + " " + what + " at " + time + ": " + actual + ", expected " + expected);
+		}
+	}
+
+	// Import a file of lectures in New York time to each of the zones through the
+	// cache (rebased before the lectures are combined into series) and compare the
+	// local times of the occurrences with the local times in the file
+	private static void checkImport() throws IOException {
+		File directory = File.createTempFile("zone-rebase", "");
+		if (!directory.delete() || !directory.mkdir())
+			throw new IOException("Cannot create the directory " + directory);
+		File path = new File(directory, "lectures.ics");
+		File cacheDirectory = new File(directory, "cache");
+		try {
+			TreeSet<LocalDateTime> lectures = generate(path);
+			ParseCache cache = new ParseCache(cacheDirectory, ParseCache.DEFAULT_MAX_BYTES);
+			for (String id : IMPORT_ZONES) {
+				ZoneId zone = ZoneId.of(id);
+				// The second import is loaded from the cache
+				for (int i = 0; i < 2; i++) {
+					ICalendar iCal = cache.readFromFile(path, 2, NEW_YORK, zone);
+					TreeSet<LocalDateTime> occurrences = new TreeSet<>();
+					for (Occurrence occurrence : iCal.getOccurrences(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2)) {
+						occurrences.add(LocalDateTime.ofInstant(Instant.ofEpochMilli(occurrence.getStartMillis()), zone));
+					}
+					checks++;
+					if (!occurrences.equals(lectures)) {
+						failures++;
+						TreeSet<LocalDateTime> missing = new TreeSet<>(lectures);
+						missing.removeAll(occurrences);
+						occurrences.removeAll(lectures);
+						System.out.println("Import to " + zone + (i == 0 ? "" : " (cached)") + ": missing " + missing
+								+ ", unexpected " + occurrences);
+					}
+				}
+			}
+		} finally {
+			File[] files = cacheDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			cacheDirectory.delete();
+			path.delete();
+			directory.delete();
+		}
+	}
+
+	// Generate a term of weekly lectures (one VEVENT for each lecture, the same as
+	// the exported course schedules) in New York time across both DST changes of
+	// the year, with some weeks off
+	// return the local times of the lectures
+	private static TreeSet<LocalDateTime> generate(File path) throws IOException {
+		TreeSet<LocalDateTime> lectures = new TreeSet<>();
+		DayOfWeek[] days = { DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.SUNDAY };
+		LocalTime[] times = { LocalTime.of(10, 0), LocalTime.of(18, 30), LocalTime.of(8, 15) };
+		try (PrintWriter output = new PrintWriter(path, StandardCharsets.UTF_8)) {
+			output.print("BEGIN:VCALENDAR\r\nPRODID:-//Zone//Test//EN\r\nVERSION:2.0\r\n");
+			int number = 0;
+			for (int course = 0; course < days.length; course++) {
+				for (LocalDate date = LocalDate.of(2021, 1, 4).with(days[course]); date.getYear() == 2021; date = date
+						.plusWeeks(1)) {
+					// Weeks off (one of them next to the DST change of New York)
+					int week = date.getDayOfYear() / 7;
+					if (week == 9 || week == 20 || week == 44)
+						continue;
+					LocalDateTime start = date.atTime(times[course]);
+					lectures.add(start);
+					output.print("BEGIN:VEVENT\r\n");
+					output.print("SUMMARY:CPS*" + (2231 + course) + "*W01 LECTURE\r\n");
+					output.print("LOCATION:Location: W\\, Building:GEH\\, Room:C50" + course + "\r\n");
+					output.print("DTSTART:" + ICS_TIME.format(start.atZone(NEW_YORK).withZoneSameInstant(ZoneOffset.UTC))
+							+ "\r\n");
+					output.print("DTEND:" + ICS_TIME.format(
+							start.plusMinutes(90).atZone(NEW_YORK).withZoneSameInstant(ZoneOffset.UTC)) + "\r\n");
+					output.print("UID:zone-" + number++ + "\r\nEND:VEVENT\r\n");
+				}
+			}
+			output.print("END:VCALENDAR\r\n");
+		}
+		return lectures;
+	}
+}